@@ -66,6 +66,12 @@ LOCAL_ANNOTATION_PROCESSORS := \
 LOCAL_ANNOTATION_PROCESSOR_CLASSES := \
     androidx.room.RoomProcessor
 
+# Database schemas are exported to the intermediates dir, not into the source tree. When the
+# database version changes, copy the new schema to schemas/ and check it in, so migrations can
+# be tested against it.
+LOCAL_JAVACFLAGS += \
+    -Aroom.schemaLocation=$(call intermediates-dir-for,APPS,CarRadioApp,,COMMON)/schemas
+
 LOCAL_RESOURCE_DIR := $(LOCAL_PATH)/res
 
 LOCAL_PROGUARD_ENABLED := disabled
@@ -86,4 +92,6 @@ LOCAL_RESOURCE_DIR += \
 
 include $(BUILD_PACKAGE)
 
+include $(call all-makefiles-under,$(LOCAL_PATH))
+
 endif
@@ -0,0 +1,68 @@
+#
+# Copyright (C) 2019 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+LOCAL_PATH := $(call my-dir)
+
+# JMH benchmarks of the radio app logic, run on the host JVM.
+#
+# Benchmarks live in the packages of the code they measure, so they can reach package-private
+# reference implementations. They are compiled against the app's classes (plain Java bytecode,
+# even though built for the device), and only measure classes that don't depend on AndroidX
+# libraries other than annotations. Framework classes come from robolectric_android-all-stub,
+# Robolectric's android-all jar; despite the module name, it holds real implementations of
+# the pure Java parts of the framework. The same jar is used to compile and to run.
+#
+# Build and run with:
+#
+#   m CarRadioAppBenchmarks
+#   java -cp $ANDROID_HOST_OUT/framework/CarRadioAppBenchmarks.jar:$CAR_RADIO_APP_CLASSES:\
+#       $ANDROID_HOST_OUT/framework/robolectric_android-all-stub.jar \
+#       org.openjdk.jmh.Main [benchmark regex] [JMH options]
+#
+# where $CAR_RADIO_APP_CLASSES is the classes.jar of CarRadioApp's common intermediates
+# (see CAR_RADIO_APP_CLASSES_JAR below).
+
+include $(CLEAR_VARS)
+
+CAR_RADIO_APP_CLASSES_JAR := $(call intermediates-dir-for,APPS,CarRadioApp,,COMMON)/classes.jar
+
+LOCAL_MODULE := CarRadioAppBenchmarks
+
+LOCAL_MODULE_TAGS := optional
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src)
+
+LOCAL_CLASSPATH := $(CAR_RADIO_APP_CLASSES_JAR)
+
+LOCAL_ADDITIONAL_DEPENDENCIES := $(CAR_RADIO_APP_CLASSES_JAR)
+
+LOCAL_JAVA_LIBRARIES := \
+    robolectric_android-all-stub
+
+LOCAL_REQUIRED_MODULES := \
+    robolectric_android-all-stub
+
+LOCAL_STATIC_JAVA_LIBRARIES := \
+    jmh-core
+
+LOCAL_ANNOTATION_PROCESSORS := \
+    jmh-core \
+    jmh-generator-annprocess
+
+LOCAL_ANNOTATION_PROCESSOR_CLASSES := \
+    org.openjdk.jmh.generators.BenchmarkProcessor
+
+include $(BUILD_HOST_JAVA_LIBRARY)
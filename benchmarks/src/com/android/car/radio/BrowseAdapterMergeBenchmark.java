@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio;
+
+import com.android.car.broadcastradio.support.Program;
+import com.android.car.radio.benchmarks.Fixtures;
+import com.android.car.radio.util.SortedLists;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Browse list updates: sorting only the new programs and merging, against a full re-sort.
+ *
+ * The list holds all FM and DAB fixture programs. An update retains most of them and adds
+ * the remaining ones, like program list deltas do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BrowseAdapterMergeBenchmark {
+    /** Number of programs added by the update; the full list is the initial load. */
+    @Param({"1", "20", "700"})
+    public int addedCount;
+
+    private List<Program> mRetained;
+    private List<Program> mAdded;
+
+    @Setup
+    public void setUp() {
+        List<Program> programs = new ArrayList<>(Fixtures.createFmPrograms());
+        programs.addAll(Fixtures.createDabPrograms());
+        int retainedCount = Math.max(0, programs.size() - addedCount);
+
+        mRetained = new ArrayList<>(programs.subList(0, retainedCount));
+        mRetained.sort(ProgramOrder.ORDER);
+        mAdded = new ArrayList<>(programs.subList(retainedCount, programs.size()));
+
+        List<Program> expected = new ArrayList<>(programs);
+        expected.sort(ProgramOrder.ORDER);
+        if (!expected.equals(merge())) throw new IllegalStateException("Merge result mismatch");
+    }
+
+    @Benchmark
+    public List<Program> merge() {
+        // the adapter sorts the freshly built list of added entries in place
+        return SortedLists.mergeSorted(mRetained, new ArrayList<>(mAdded), ProgramOrder.ORDER);
+    }
+
+    @Benchmark
+    public List<Program> fullSort() {
+        List<Program> all = new ArrayList<>(mRetained.size() + mAdded.size());
+        all.addAll(mRetained);
+        all.addAll(mAdded);
+        all.sort(ProgramOrder.ORDER);
+        return all;
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.bands;
+
+import com.android.car.radio.benchmarks.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Manual tuner keypress validation: precomputed index against the scanning algorithm.
+ *
+ * Every benchmark iteration replays all keypress sequences leading to valid channels of a band,
+ * as ManualTunerController would issue them. Setup verifies that both implementations give
+ * identical answers for every prefix, in every region config.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ManualTunerBenchmark {
+    // longer than any AM/FM display form
+    private static final int MAX_PREFIX = 100_000;
+
+    @Param({Fixtures.REGION_ITU_1, Fixtures.REGION_ITU_1_50KHZ, Fixtures.REGION_ITU_2,
+            Fixtures.REGION_JAPAN, Fixtures.REGION_SHORTWAVE})
+    public String region;
+
+    @Param({"AM", "FM"})
+    public String band;
+
+    private RegionConfig mConfig;
+    private AMFMProgramType mType;
+    private int[] mKeypresses;
+
+    @Setup
+    public void setUp() {
+        for (String name : Fixtures.REGIONS) {
+            RegionConfig config = Fixtures.createRegionConfig(name);
+            verify(name, config, (AMFMProgramType) ProgramType.AM);
+            verify(name, config, (AMFMProgramType) ProgramType.FM);
+        }
+
+        mConfig = Fixtures.createRegionConfig(region);
+        mType = (AMFMProgramType) ("AM".equals(band) ? ProgramType.AM : ProgramType.FM);
+
+        // all prefixes the user can type, following the enabled buttons
+        List<Integer> keypresses = new ArrayList<>();
+        collectKeypresses(0, keypresses);
+        mKeypresses = keypresses.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void collectKeypresses(int prefix, List<Integer> out) {
+        out.add(prefix);
+        boolean[] valid = mType.computeValidAppendices(mConfig, prefix);
+        for (int digit = 0; digit < 10; digit++) {
+            if (valid[digit]) collectKeypresses(prefix * 10 + digit, out);
+        }
+    }
+
+    private static void verify(String region, RegionConfig config, AMFMProgramType type) {
+        for (int prefix = 0; prefix < MAX_PREFIX; prefix++) {
+            boolean[] expected = type.computeValidAppendices(config, prefix);
+            int mask = type.getValidAppendicesMask(config, prefix);
+            for (int digit = 0; digit < 10; digit++) {
+                if (expected[digit] != ((mask & (1 << digit)) != 0)) {
+                    throw new IllegalStateException("Valid appendices mismatch for " + region
+                            + " " + type + ", prefix " + prefix + ", digit " + digit);
+                }
+            }
+            if (type.computeIsComplete(config, prefix) != type.isComplete(config, prefix)) {
+                throw new IllegalStateException("isComplete mismatch for " + region + " "
+                        + type + ", prefix " + prefix);
+            }
+        }
+    }
+
+    @Benchmark
+    public void validAppendicesIndex(Blackhole bh) {
+        for (int prefix : mKeypresses) {
+            bh.consume(mType.getValidAppendicesMask(mConfig, prefix));
+        }
+    }
+
+    @Benchmark
+    public void validAppendicesScan(Blackhole bh) {
+        for (int prefix : mKeypresses) {
+            bh.consume(mType.computeValidAppendices(mConfig, prefix));
+        }
+    }
+
+    @Benchmark
+    public void isCompleteIndex(Blackhole bh) {
+        for (int prefix : mKeypresses) {
+            bh.consume(mType.isComplete(mConfig, prefix));
+        }
+    }
+
+    @Benchmark
+    public void isCompleteScan(Blackhole bh) {
+        for (int prefix : mKeypresses) {
+            bh.consume(mType.computeIsComplete(mConfig, prefix));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public ChannelDigitIndex buildIndex() {
+        return new ChannelDigitIndex("AM".equals(band) ? mConfig.getAmConfig()
+                : mConfig.getFmConfig(), mType.getLeadingDigitsFactor());
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.bands;
+
+import android.hardware.radio.ProgramSelector;
+
+import com.android.car.radio.benchmarks.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Band classification of a whole program list, as done by every list sort and snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProgramTypeBenchmark {
+    @Param({"FM", "DAB"})
+    public String fixture;
+
+    private ProgramSelector[] mSelectors;
+
+    @Setup
+    public void setUp() {
+        List<ProgramSelector> selectors = Fixtures.getSelectors("FM".equals(fixture)
+                ? Fixtures.createFmPrograms() : Fixtures.createDabPrograms());
+        mSelectors = selectors.toArray(new ProgramSelector[0]);
+    }
+
+    @Benchmark
+    public void fromSelector(Blackhole bh) {
+        for (ProgramSelector sel : mSelectors) {
+            bh.consume(ProgramType.fromSelector(sel));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.benchmarks;
+
+import android.hardware.radio.ProgramSelector;
+import android.hardware.radio.RadioManager;
+import android.hardware.radio.RadioManager.AmBandDescriptor;
+import android.hardware.radio.RadioManager.BandDescriptor;
+import android.hardware.radio.RadioManager.FmBandDescriptor;
+
+import com.android.car.broadcastradio.support.Program;
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.car.radio.bands.RegionConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Realistic program lists and region configs shared by all benchmarks.
+ *
+ * Fixtures are generated from a fixed seed, so that all runs work on the same data.
+ */
+public final class Fixtures {
+    /** Number of FM stations; a dense urban area. */
+    public static final int FM_STATION_COUNT = 200;
+
+    /** Number of DAB services; a few dozen ensembles. */
+    public static final int DAB_SERVICE_COUNT = 500;
+
+    private static final int DAB_SERVICES_PER_ENSEMBLE = 12;
+    private static final long SEED = 0x5EED;
+
+    /** Region config names, for use with JMH {@code @Param}. */
+    public static final String REGION_ITU_1 = "ITU_1";
+    public static final String REGION_ITU_1_50KHZ = "ITU_1_50KHZ";
+    public static final String REGION_ITU_2 = "ITU_2";
+    public static final String REGION_JAPAN = "JAPAN";
+    public static final String REGION_SHORTWAVE = "SHORTWAVE";
+
+    /** All region config names. */
+    public static final List<String> REGIONS = Collections.unmodifiableList(Arrays.asList(
+            REGION_ITU_1, REGION_ITU_1_50KHZ, REGION_ITU_2, REGION_JAPAN, REGION_SHORTWAVE));
+
+    private Fixtures() {}
+
+    private static BandDescriptor fm(int region, int lower, int upper, int spacing) {
+        return new FmBandDescriptor(region, RadioManager.BAND_FM, lower, upper, spacing,
+                true, true, true, true, true);
+    }
+
+    private static BandDescriptor am(int region, int lower, int upper, int spacing) {
+        return new AmBandDescriptor(region, RadioManager.BAND_AM, lower, upper, spacing, false);
+    }
+
+    /**
+     * Creates a region config by its name.
+     */
+    public static RegionConfig createRegionConfig(String name) {
+        switch (name) {
+            case REGION_ITU_1:
+                return new RegionConfig(Arrays.asList(
+                        fm(RadioManager.REGION_ITU_1, 87500, 108000, 100),
+                        am(RadioManager.REGION_ITU_1, 153, 279, 9),
+                        am(RadioManager.REGION_ITU_1, 531, 1602, 9)));
+            case REGION_ITU_1_50KHZ:
+                return new RegionConfig(Arrays.asList(
+                        fm(RadioManager.REGION_ITU_1, 87500, 108000, 50),
+                        am(RadioManager.REGION_ITU_1, 531, 1602, 9)));
+            case REGION_ITU_2:
+                return new RegionConfig(Arrays.asList(
+                        fm(RadioManager.REGION_ITU_2, 87900, 107900, 200),
+                        am(RadioManager.REGION_ITU_2, 530, 1710, 10)));
+            case REGION_JAPAN:
+                return new RegionConfig(Arrays.asList(
+                        fm(RadioManager.REGION_JAPAN, 76000, 95000, 100),
+                        am(RadioManager.REGION_JAPAN, 522, 1629, 9)));
+            case REGION_SHORTWAVE:
+                return new RegionConfig(Arrays.asList(
+                        fm(RadioManager.REGION_ITU_1, 87500, 108000, 100),
+                        am(RadioManager.REGION_ITU_1, 531, 1602, 9),
+                        am(RadioManager.REGION_ITU_1, 2300, 26100, 5)));
+            default:
+                throw new IllegalArgumentException("Unknown region config: " + name);
+        }
+    }
+
+    /**
+     * Generates FM stations on the ITU-1 grid, in random order.
+     */
+    public static List<Program> createFmPrograms() {
+        List<Integer> channels = new ArrayList<>();
+        for (int freq = 87500; freq <= 108000; freq += 100) channels.add(freq);
+        Collections.shuffle(channels, new Random(SEED));
+
+        List<Program> programs = new ArrayList<>(FM_STATION_COUNT);
+        for (int i = 0; i < FM_STATION_COUNT; i++) {
+            int freq = channels.get(i);
+            ProgramSelector sel = ProgramSelectorExt.createAmFmSelector(freq);
+            programs.add(new Program(sel, "FM " + (freq / 1000) + "." + (freq % 1000 / 100)));
+        }
+        return programs;
+    }
+
+    /**
+     * Generates DAB services grouped in ensembles, in random order.
+     */
+    public static List<Program> createDabPrograms() {
+        Random rnd = new Random(SEED);
+        List<Program> programs = new ArrayList<>(DAB_SERVICE_COUNT);
+        for (int i = 0; i < DAB_SERVICE_COUNT; i++) {
+            int ensemble = 0xC000 + i / DAB_SERVICES_PER_ENSEMBLE;
+            long sidExt = (0xE1000000L + rnd.nextInt(0xFFFFFF)) | ((long) (i % 8) << 32);
+            // 5A through 13F, 1.712 MHz apart
+            long frequency = 174928 + (i / DAB_SERVICES_PER_ENSEMBLE % 38) * 1712;
+
+            ProgramSelector.Identifier primary = new ProgramSelector.Identifier(
+                    ProgramSelector.IDENTIFIER_TYPE_DAB_SID_EXT, sidExt);
+            ProgramSelector.Identifier[] secondary = {
+                new ProgramSelector.Identifier(
+                        ProgramSelector.IDENTIFIER_TYPE_DAB_ENSEMBLE, ensemble),
+                new ProgramSelector.Identifier(
+                        ProgramSelector.IDENTIFIER_TYPE_DAB_FREQUENCY, frequency),
+            };
+            ProgramSelector sel = new ProgramSelector(ProgramSelector.PROGRAM_TYPE_DAB,
+                    primary, secondary, null);
+            programs.add(new Program(sel, "DAB Service " + Integer.toHexString(i * 7919)));
+        }
+        return programs;
+    }
+
+    /**
+     * Returns selectors of given programs.
+     */
+    public static List<ProgramSelector> getSelectors(List<Program> programs) {
+        List<ProgramSelector> selectors = new ArrayList<>(programs.size());
+        for (Program program : programs) selectors.add(program.getSelector());
+        return selectors;
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.storage;
+
+import android.hardware.radio.ProgramSelector;
+
+import com.android.car.broadcastradio.support.Program;
+import com.android.car.radio.benchmarks.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Favorite checks of a whole program list, as done when (re)binding the browse list.
+ *
+ * {@link RadioStorage#isFavorite} is backed by {@link FavoritesSnapshot}, which is compared
+ * against the linear scan of the favorites list it replaced.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FavoritesSnapshotBenchmark {
+    @Param({"FM", "DAB"})
+    public String fixture;
+
+    @Param({"10", "50"})
+    public int favoriteCount;
+
+    private ProgramSelector[] mSelectors;
+    private List<Program> mFavorites;
+    private FavoritesSnapshot mSnapshot;
+
+    @Setup
+    public void setUp() {
+        List<Program> programs = "FM".equals(fixture)
+                ? Fixtures.createFmPrograms() : Fixtures.createDabPrograms();
+        mSelectors = Fixtures.getSelectors(programs).toArray(new ProgramSelector[0]);
+
+        List<Program> candidates = new ArrayList<>(programs);
+        Random rnd = new Random(favoriteCount);
+        mFavorites = new ArrayList<>(favoriteCount);
+        for (int i = 0; i < favoriteCount; i++) {
+            mFavorites.add(candidates.remove(rnd.nextInt(candidates.size())));
+        }
+        mSnapshot = new FavoritesSnapshot(mFavorites);
+    }
+
+    private static boolean isFavoriteScan(List<Program> favorites, ProgramSelector sel) {
+        ProgramSelector.Identifier id = sel.getPrimaryId();
+        for (Program fav : favorites) {
+            if (id.equals(fav.getSelector().getPrimaryId())) return true;
+        }
+        return false;
+    }
+
+    @Benchmark
+    public void containsSnapshot(Blackhole bh) {
+        for (ProgramSelector sel : mSelectors) {
+            bh.consume(mSnapshot.contains(sel));
+        }
+    }
+
+    @Benchmark
+    public void containsListScan(Blackhole bh) {
+        for (ProgramSelector sel : mSelectors) {
+            bh.consume(isFavoriteScan(mFavorites, sel));
+        }
+    }
+
+    @Benchmark
+    public FavoritesSnapshot buildSnapshot() {
+        return new FavoritesSnapshot(mFavorites);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.storage;
+
+import android.hardware.radio.ProgramSelector;
+
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.car.radio.benchmarks.Fixtures;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Favorites database column encoding: binary format against the legacy URI format.
+ *
+ * Each iteration converts a whole program list, as loading or migrating the favorites does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProgramSelectorConverterBenchmark {
+    @Param({"FM", "DAB"})
+    public String fixture;
+
+    private ProgramSelector[] mSelectors;
+    private byte[][] mBlobs;
+    private String[] mUris;
+
+    @Setup
+    public void setUp() {
+        List<ProgramSelector> selectors = Fixtures.getSelectors("FM".equals(fixture)
+                ? Fixtures.createFmPrograms() : Fixtures.createDabPrograms());
+        mSelectors = selectors.toArray(new ProgramSelector[0]);
+        mBlobs = new byte[mSelectors.length][];
+        mUris = new String[mSelectors.length];
+        for (int i = 0; i < mSelectors.length; i++) {
+            mBlobs[i] = ProgramSelectorConverter.toBlob(mSelectors[i]);
+            mUris[i] = ProgramSelectorExt.toUri(mSelectors[i]).toString();
+            if (!mSelectors[i].equals(ProgramSelectorConverter.toSelector(mBlobs[i]))) {
+                throw new IllegalStateException("Binary round trip failed: " + mSelectors[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public void encodeBinary(Blackhole bh) {
+        for (ProgramSelector sel : mSelectors) {
+            bh.consume(ProgramSelectorConverter.toBlob(sel));
+        }
+    }
+
+    @Benchmark
+    public void encodeUri(Blackhole bh) {
+        for (ProgramSelector sel : mSelectors) {
+            bh.consume(ProgramSelectorExt.toUri(sel).toString());
+        }
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole bh) {
+        for (byte[] blob : mBlobs) {
+            bh.consume(ProgramSelectorConverter.toSelector(blob));
+        }
+    }
+
+    @Benchmark
+    public void decodeUri(Blackhole bh) {
+        for (String uri : mUris) {
+            bh.consume(ProgramSelectorConverter.fromLegacyUri(uri));
+        }
+    }
+}
@@ -26,11 +26,19 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.LiveData;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.android.car.broadcastradio.support.Program;
+import com.android.car.radio.storage.FavoritesSnapshot;
+import com.android.car.radio.util.RadioTrace;
+import com.android.car.radio.util.SortedLists;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -39,14 +47,30 @@ import java.util.stream.Collectors;
 
 /**
  * Adapter that will display a list of radio stations that represent the user's presets.
+ *
+ * Programs are kept sorted by band, then by frequency (AM/FM) or label (DAB), so the order is
+ * stable across updates. List updates are diffed on a background thread and dispatched as
+ * fine-grained change events. Items have stable IDs assigned per primary identifier, for as
+ * long as the identifier stays on the list.
  */
 public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
     // Only one type of view in this adapter.
     private static final int PRESETS_VIEW_TYPE = 0;
 
+    // Change payload for rebinding the active station highlight only.
+    private static final Object PAYLOAD_ACTIVE_STATION = new Object();
+
     private final Object mLock = new Object();
 
+    private final AsyncListDiffer<Entry> mDiffer = new AsyncListDiffer<>(this, new DiffCallback());
+
+    // sorted with ENTRY_ORDER
     private @NonNull List<Entry> mPrograms = new ArrayList<>();
+    // primary identifier -> entry on mPrograms
+    private @NonNull Map<ProgramSelector.Identifier, Entry> mIndex = new HashMap<>();
+    // primary identifier -> stable item ID, for entries on mPrograms and the current program
+    private @NonNull Map<ProgramSelector.Identifier, Long> mItemIds = new HashMap<>();
+    private long mNextItemId;
     private @Nullable ProgramInfo mCurrentProgram;
 
     private OnItemClickListener mItemClickListener;
@@ -80,21 +104,81 @@ public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
         void onItemFavoriteChanged(Program program, boolean saveAsFavorite);
     }
 
-    private class Entry {
-        public Program program;
-        public boolean isFavorite;
-        public boolean wasFavorite;
+    /* Entries are immutable, so that they can be safely diffed on a background thread. */
+    private static class Entry {
+        public final Program program;
+        public final boolean isFavorite;
+        public final boolean wasFavorite;
+        public final long itemId;
 
-        Entry(Program program, boolean isFavorite) {
+        Entry(Program program, boolean isFavorite, long itemId) {
+            this(program, isFavorite, isFavorite, itemId);
+        }
+
+        Entry(Program program, boolean isFavorite, boolean wasFavorite, long itemId) {
             this.program = program;
             this.isFavorite = isFavorite;
-            this.wasFavorite = isFavorite;
+            this.wasFavorite = wasFavorite;
+            this.itemId = itemId;
+        }
+
+        ProgramSelector.Identifier getId() {
+            return program.getSelector().getPrimaryId();
+        }
+    }
+
+    private static final Comparator<Entry> ENTRY_ORDER =
+            (a, b) -> ProgramOrder.compare(a.program, b.program);
+
+    private long getItemIdLocked(@NonNull ProgramSelector.Identifier id) {
+        Long itemId = mItemIds.get(id);
+        if (itemId != null) return itemId;
+        itemId = mNextItemId++;
+        mItemIds.put(id, itemId);
+        return itemId;
+    }
+
+    /**
+     * Merges new entries into the sorted list of retained ones and rebuilds the index.
+     */
+    private void setProgramsLocked(@NonNull List<Entry> retained, @NonNull List<Entry> added) {
+        List<Entry> merged = SortedLists.mergeSorted(retained, added, ENTRY_ORDER);
+        Map<ProgramSelector.Identifier, Entry> index = new HashMap<>();
+        Map<ProgramSelector.Identifier, Long> itemIds = new HashMap<>();
+        for (Entry entry : merged) {
+            index.put(entry.getId(), entry);
+            itemIds.put(entry.getId(), entry.itemId);
+        }
+        if (mCurrentProgram != null) {
+            ProgramSelector.Identifier currentId = mCurrentProgram.getSelector().getPrimaryId();
+            Long itemId = mItemIds.get(currentId);
+            if (itemId != null) itemIds.putIfAbsent(currentId, itemId);
+        }
+
+        mPrograms = merged;
+        mIndex = index;
+        mItemIds = itemIds;
+        submitLocked();
+    }
+
+    private static class DiffCallback extends DiffUtil.ItemCallback<Entry> {
+        @Override
+        public boolean areItemsTheSame(@NonNull Entry oldItem, @NonNull Entry newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Entry oldItem, @NonNull Entry newItem) {
+            return oldItem.isFavorite == newItem.isFavorite
+                    && oldItem.program.getSelector().equals(newItem.program.getSelector())
+                    && oldItem.program.getName().equals(newItem.program.getName());
         }
     }
 
     public BrowseAdapter(@NonNull LifecycleOwner lifecycleOwner,
             @NonNull LiveData<ProgramInfo> currentProgram,
-            @NonNull LiveData<List<Program>> favorites) {
+            @NonNull LiveData<FavoritesSnapshot> favorites) {
+        setHasStableIds(true);
         favorites.observe(lifecycleOwner, this::onFavoritesChanged);
         currentProgram.observe(lifecycleOwner, this::onCurrentProgramChanged);
     }
@@ -121,28 +205,38 @@ public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
      * Sets the given list as the list of programs to display.
      */
     public void setProgramList(@NonNull List<ProgramInfo> programs) {
-        Map<ProgramSelector.Identifier, ProgramInfo> liveMap = programs.stream().collect(
-                Collectors.toMap(p -> p.getSelector().getPrimaryId(), p -> p));
+        Map<ProgramSelector.Identifier, ProgramInfo> liveMap = new HashMap<>();
+        for (ProgramInfo info : programs) liveMap.put(info.getSelector().getPrimaryId(), info);
         synchronized (mLock) {
             // Remove entries no longer on live list, except those which were favorites previously
-            List<Entry> remove = new ArrayList<>();
+            List<Entry> retained = new ArrayList<>(mPrograms.size());
+            List<Entry> added = new ArrayList<>(liveMap.size());
             for (Entry entry : mPrograms) {
-                ProgramSelector.Identifier id = entry.program.getSelector().getPrimaryId();
-                ProgramInfo liveEntry = liveMap.get(id);
-                if (liveEntry != null) {
-                    liveMap.remove(id);  // item is already on the list, don't add twice
-                } else if (!entry.wasFavorite) {
-                    remove.add(entry);  // no longer live and was never favorite - remove it
+                ProgramSelector.Identifier id = entry.getId();
+                ProgramInfo liveEntry = liveMap.remove(id);
+                if (liveEntry == null) {
+                    // no longer live - keep it only if it was a favorite
+                    if (entry.wasFavorite) retained.add(entry);
+                    continue;
+                }
+
+                // item is already on the list, update it with the current program info
+                Entry updated = new Entry(Program.fromProgramInfo(liveEntry), entry.isFavorite,
+                        entry.wasFavorite, entry.itemId);
+                if (ENTRY_ORDER.compare(entry, updated) == 0) {
+                    retained.add(updated);
+                } else {
+                    added.add(updated);  // e.g. a renamed DAB station moves to its new place
                 }
             }
-            mPrograms.removeAll(remove);
 
             // Add new entries from live list
-            liveMap.values().stream()
-                    .map(pi -> new Entry(Program.fromProgramInfo(pi), false))
-                    .forEachOrdered(mPrograms::add);
+            for (ProgramInfo info : liveMap.values()) {
+                ProgramSelector.Identifier id = info.getSelector().getPrimaryId();
+                added.add(new Entry(Program.fromProgramInfo(info), false, getItemIdLocked(id)));
+            }
 
-            notifyDataSetChanged();
+            setProgramsLocked(retained, added);
         }
     }
 
@@ -154,31 +248,35 @@ public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
         synchronized (mLock) {
             // Remove all programs that are no longer a favorite,
             // except those that were never favorites (i.e. currently tuned)
-            mPrograms = mPrograms.stream()
+            setProgramsLocked(mPrograms.stream()
                     .filter(e -> e.isFavorite || !e.wasFavorite)
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toList()), new ArrayList<>());
         }
-        notifyDataSetChanged();
     }
 
     /**
      * Updates the stations that are favorites, while keeping unfavorited stations in the list
      */
-    private void onFavoritesChanged(List<Program> favorites) {
-        Map<ProgramSelector.Identifier, Program> favMap = favorites.stream().collect(
-                Collectors.toMap(p -> p.getSelector().getPrimaryId(), p -> p));
+    private void onFavoritesChanged(@NonNull FavoritesSnapshot favorites) {
         synchronized (mLock) {
-            // Mark existing elements as favorites or not
+            // Mark existing elements as favorites or not; this doesn't affect the order
+            List<Entry> retained = new ArrayList<>(mPrograms.size());
             for (Entry entry : mPrograms) {
-                ProgramSelector.Identifier id = entry.program.getSelector().getPrimaryId();
-                entry.isFavorite = favMap.containsKey(id);
-                if (entry.isFavorite) favMap.remove(id);  // don't add twice
+                boolean isFavorite = favorites.contains(entry.program.getSelector());
+                retained.add(isFavorite == entry.isFavorite ? entry
+                        : new Entry(entry.program, isFavorite, entry.wasFavorite, entry.itemId));
             }
 
             // Add new items
-            favMap.values().stream().map(p -> new Entry(p, true)).forEachOrdered(mPrograms::add);
+            List<Entry> added = new ArrayList<>();
+            for (Program fav : favorites.getPrograms()) {
+                if (!mIndex.containsKey(fav.getSelector().getPrimaryId())) {
+                    added.add(new Entry(fav, true,
+                            getItemIdLocked(fav.getSelector().getPrimaryId())));
+                }
+            }
 
-            notifyDataSetChanged();
+            setProgramsLocked(retained, added);
         }
     }
 
@@ -188,12 +286,56 @@ public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
      * passed to this method does not match any of the programs, then none will be highlighted.
      */
     private void onCurrentProgramChanged(@NonNull ProgramInfo info) {
-        synchronized (mLock) {
-            mCurrentProgram = Objects.requireNonNull(info);
-            notifyDataSetChanged();
+        RadioTrace.begin("Radio.BrowseAdapter.onCurrentProgramChanged");
+        try {
+            synchronized (mLock) {
+                ProgramInfo previous = mCurrentProgram;
+                mCurrentProgram = Objects.requireNonNull(info);
+
+                // current program is displayed in place of an empty list
+                if (mPrograms.isEmpty()) {
+                    submitLocked();
+                    return;
+                }
+
+                ProgramSelector.Identifier currentId = info.getSelector().getPrimaryId();
+                ProgramSelector.Identifier previousId =
+                        previous == null ? null : previous.getSelector().getPrimaryId();
+                if (currentId.equals(previousId)) return;
+                notifyActiveStationChanged(previousId);
+                notifyActiveStationChanged(currentId);
+            }
+        } finally {
+            RadioTrace.end();
         }
     }
 
+    private void notifyActiveStationChanged(@Nullable ProgramSelector.Identifier id) {
+        if (id == null) return;
+        List<Entry> displayed = mDiffer.getCurrentList();
+        for (int i = 0; i < displayed.size(); i++) {
+            if (!id.equals(displayed.get(i).getId())) continue;
+            notifyItemChanged(i, PAYLOAD_ACTIVE_STATION);
+            return;
+        }
+    }
+
+    private void submitLocked() {
+        if (mPrograms.isEmpty() && mCurrentProgram != null) {
+            // if there are no elements on the list, show current program
+            mDiffer.submitList(Collections.singletonList(new Entry(
+                    Program.fromProgramInfo(mCurrentProgram), false,
+                    getItemIdLocked(mCurrentProgram.getSelector().getPrimaryId()))));
+        } else {
+            mDiffer.submitList(mPrograms);
+        }
+    }
+
+    private boolean isCurrentLocked(@NonNull Entry entry) {
+        return mCurrentProgram != null
+                && entry.getId().equals(mCurrentProgram.getSelector().getPrimaryId());
+    }
+
     @Override
     public ProgramViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
@@ -205,11 +347,32 @@ public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
 
     @Override
     public void onBindViewHolder(ProgramViewHolder holder, int position) {
-        synchronized (mLock) {
-            Entry entry = getEntryLocked(position);
-            boolean isCurrent = mCurrentProgram != null
-                    && entry.program.getSelector().equals(mCurrentProgram.getSelector());
-            holder.bindPreset(entry.program, isCurrent, getItemCount(), entry.isFavorite);
+        RadioTrace.begin("Radio.BrowseAdapter.bind");
+        try {
+            synchronized (mLock) {
+                Entry entry = mDiffer.getCurrentList().get(position);
+                holder.bindPreset(entry.program, isCurrentLocked(entry), getItemCount(),
+                        entry.isFavorite);
+            }
+        } finally {
+            RadioTrace.end();
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(ProgramViewHolder holder, int position,
+            List<Object> payloads) {
+        if (payloads.isEmpty() || !payloads.stream().allMatch(p -> p == PAYLOAD_ACTIVE_STATION)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        RadioTrace.begin("Radio.BrowseAdapter.bindActiveStation");
+        try {
+            synchronized (mLock) {
+                holder.bindActiveStation(isCurrentLocked(mDiffer.getCurrentList().get(position)));
+            }
+        } finally {
+            RadioTrace.end();
         }
     }
 
@@ -218,39 +381,33 @@ public class BrowseAdapter extends RecyclerView.Adapter<ProgramViewHolder> {
         return PRESETS_VIEW_TYPE;
     }
 
-    private Entry getEntryLocked(int position) {
-        // if there are no elements on the list, return current program
-        if (position == 0 && mPrograms.size() == 0) {
-            return new Entry(Program.fromProgramInfo(mCurrentProgram), false);
-        }
-        return mPrograms.get(position);
+    @Override
+    public long getItemId(int position) {
+        return mDiffer.getCurrentList().get(position).itemId;
     }
 
     @Override
     public int getItemCount() {
-        synchronized (mLock) {
-            int cnt = mPrograms.size();
-            if (cnt == 0 && mCurrentProgram != null) return 1;
-            return cnt;
-        }
+        return mDiffer.getCurrentList().size();
     }
 
     private void handlePresetClicked(int position) {
         synchronized (mLock) {
             if (mItemClickListener == null) return;
-            if (position >= getItemCount()) return;
+            if (position < 0 || position >= getItemCount()) return;
 
-            mItemClickListener.onItemClicked(getEntryLocked(position).program.getSelector());
+            mItemClickListener.onItemClicked(
+                    mDiffer.getCurrentList().get(position).program.getSelector());
         }
     }
 
     private void handlePresetFavoriteChanged(int position, boolean saveAsFavorite) {
         synchronized (mLock) {
             if (mItemFavoriteListener == null) return;
-            if (position >= getItemCount()) return;
+            if (position < 0 || position >= getItemCount()) return;
 
             mItemFavoriteListener.onItemFavoriteChanged(
-                    getEntryLocked(position).program, saveAsFavorite);
+                    mDiffer.getCurrentList().get(position).program, saveAsFavorite);
         }
     }
 }
@@ -83,9 +83,9 @@ public class ManualTunerController {
         synchronized (mLock) {
             mChannelDisplay.setText(mProgramType.format(mEnteredDigits));
             mEnterButton.setEnabled(mProgramType.isComplete(mRegionConfig, mEnteredDigits));
-            boolean[] valid = mProgramType.getValidAppendices(mRegionConfig, mEnteredDigits);
+            int valid = mProgramType.getValidAppendicesMask(mRegionConfig, mEnteredDigits);
             for (int i = 0; i < 10; i++) {
-                mDigitButtons.get(i).setEnabled(valid[i]);
+                mDigitButtons.get(i).setEnabled((valid & (1 << i)) != 0);
             }
         }
     }
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio;
+
+import android.hardware.radio.ProgramSelector;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.broadcastradio.support.Program;
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.car.radio.bands.ProgramType;
+
+import java.util.Comparator;
+
+/**
+ * Display order of programs on the browse list.
+ *
+ * Programs are ordered by band, then by frequency (AM/FM) or label (DAB), then by primary
+ * identifier, so the order is stable across updates.
+ */
+final class ProgramOrder {
+    /** Display order of programs. */
+    static final Comparator<Program> ORDER = ProgramOrder::compare;
+
+    private ProgramOrder() {}
+
+    private static int getBandRank(@Nullable ProgramType type) {
+        if (type == ProgramType.AM) return 0;
+        if (type == ProgramType.FM) return 1;
+        if (type == ProgramType.DAB) return 2;
+        return 3;
+    }
+
+    private static long getFrequency(@NonNull ProgramSelector sel) {
+        if (!ProgramSelectorExt.hasId(sel, ProgramSelector.IDENTIFIER_TYPE_AMFM_FREQUENCY)) {
+            return sel.getPrimaryId().getValue();
+        }
+        return sel.getFirstId(ProgramSelector.IDENTIFIER_TYPE_AMFM_FREQUENCY);
+    }
+
+    /**
+     * Compares programs in display order.
+     */
+    static int compare(@NonNull Program a, @NonNull Program b) {
+        ProgramSelector selA = a.getSelector();
+        ProgramSelector selB = b.getSelector();
+        ProgramType type = ProgramType.fromSelector(selA);
+        int cmp = Integer.compare(getBandRank(type), getBandRank(ProgramType.fromSelector(selB)));
+        if (cmp != 0) return cmp;
+
+        if (type == ProgramType.AM || type == ProgramType.FM) {
+            cmp = Long.compare(getFrequency(selA), getFrequency(selB));
+        } else if (type == ProgramType.DAB) {
+            cmp = String.CASE_INSENSITIVE_ORDER.compare(a.getName(), b.getName());
+        }
+        if (cmp != 0) return cmp;
+
+        ProgramSelector.Identifier idA = selA.getPrimaryId();
+        ProgramSelector.Identifier idB = selB.getPrimaryId();
+        cmp = Integer.compare(idA.getType(), idB.getType());
+        if (cmp != 0) return cmp;
+        return Long.compare(idA.getValue(), idB.getValue());
+    }
+}
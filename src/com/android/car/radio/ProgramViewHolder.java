@@ -116,13 +116,7 @@ public class ProgramViewHolder extends RecyclerView.ViewHolder implements View.O
         ProgramSelector sel = program.getSelector();
         mPresetItemChannel.setText(ProgramSelectorExt.getDisplayName(
                 sel, ProgramSelectorExt.NAME_NO_MODULATION));
-
-        mPresetItemChannelBg.setColor(mContext.getResources().getColor(isActiveStation
-                ? R.color.accent_color
-                : R.color.radio_card_color, null));
-        mPresetItemChannel.setCompoundDrawablesRelativeWithIntrinsicBounds(isActiveStation
-                ? R.drawable.ic_equalizer
-                : 0, 0, 0, 0);
+        bindActiveStation(isActiveStation);
 
         String programName = program.getName();
         if (programName.isEmpty()) {
@@ -142,6 +136,18 @@ public class ProgramViewHolder extends RecyclerView.ViewHolder implements View.O
         });
     }
 
+    /**
+     * Updates only the active station highlight of the bound {@link Program}.
+     */
+    public void bindActiveStation(boolean isActiveStation) {
+        mPresetItemChannelBg.setColor(mContext.getResources().getColor(isActiveStation
+                ? R.color.accent_color
+                : R.color.radio_card_color, null));
+        mPresetItemChannel.setCompoundDrawablesRelativeWithIntrinsicBounds(isActiveStation
+                ? R.drawable.ic_equalizer
+                : 0, 0, 0, 0);
+    }
+
     private void setFavoriteButtonFilled(boolean favoriteToggleOn) {
         mPresetButton.setImageResource(favoriteToggleOn
                 ? R.drawable.ic_star_filled
@@ -33,8 +33,10 @@ import com.android.car.radio.bands.RegionConfig;
 import com.android.car.radio.service.RadioAppService;
 import com.android.car.radio.service.RadioAppServiceWrapper;
 import com.android.car.radio.service.RadioAppServiceWrapper.ConnectionState;
+import com.android.car.radio.storage.FavoritesSnapshot;
 import com.android.car.radio.storage.RadioStorage;
 import com.android.car.radio.util.Log;
+import com.android.car.radio.util.RadioTrace;
 
 import java.util.List;
 import java.util.Objects;
@@ -145,15 +147,24 @@ public class RadioController {
         return mAppService.getRegionConfig();
     }
 
-    private void onFavoritesChanged(List<Program> favorites) {
+    private void onFavoritesChanged(@NonNull FavoritesSnapshot favorites) {
         synchronized (mLock) {
             if (mCurrentProgram == null) return;
-            boolean isFav = RadioStorage.isFavorite(favorites, mCurrentProgram.getSelector());
+            boolean isFav = favorites.contains(mCurrentProgram.getSelector());
             mDisplayController.setCurrentIsFavorite(isFav);
         }
     }
 
     private void onCurrentProgramChanged(@NonNull ProgramInfo info) {
+        RadioTrace.begin("Radio.RadioController.onCurrentProgramChanged");
+        try {
+            displayCurrentProgram(info);
+        } finally {
+            RadioTrace.end();
+        }
+    }
+
+    private void displayCurrentProgram(@NonNull ProgramInfo info) {
         synchronized (mLock) {
             mCurrentProgram = Objects.requireNonNull(info);
             ProgramSelector sel = info.getSelector();
@@ -28,7 +28,9 @@ import androidx.annotation.Nullable;
 
 import com.android.car.radio.platform.RadioTunerExt;
 import com.android.car.radio.platform.RadioTunerExt.TuneCallback;
+import com.android.car.radio.platform.TuneLatencyTracker;
 import com.android.car.radio.util.Log;
+import com.android.car.radio.util.RadioTrace;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -124,10 +126,15 @@ public class AudioStreamController {
     }
 
     private boolean unmuteLocked() {
-        if (mRadioTunerExt.setMuted(false)) return true;
-        Log.w(TAG, "Failed to unmute, dropping audio focus");
-        abandonAudioFocusLocked();
-        return false;
+        RadioTrace.begin("Radio.AudioStreamController.unmute");
+        try {
+            if (mRadioTunerExt.setMuted(false)) return true;
+            Log.w(TAG, "Failed to unmute, dropping audio focus");
+            abandonAudioFocusLocked();
+            return false;
+        } finally {
+            RadioTrace.end();
+        }
     }
 
     private boolean requestAudioFocusLocked() {
@@ -184,14 +191,30 @@ public class AudioStreamController {
      */
     @Nullable
     public TuneCallback preparePlayback(@PlaybackOperation int operation) {
+        return preparePlayback(operation, null);
+    }
+
+    /**
+     * Prepares playback for a tune operation, recording the time it took to get audio focus.
+     *
+     * @param operation Playback operation type
+     * @param trace Latency trace of the operation, finished here if couldn't get focus
+     * @return result callback to be passed to {@link RadioTunerExt#tune} call,
+     *         or {@code null} if couldn't get focus.
+     */
+    @Nullable
+    public TuneCallback preparePlayback(@PlaybackOperation int operation,
+            @Nullable TuneLatencyTracker.Trace trace) {
         synchronized (mLock) {
             Object token = new Object();
             mTuningToken = token;
 
             if (!requestAudioFocusLocked()) {
                 mTuningToken = null;
+                if (trace != null) trace.finish(false);
                 return null;
             }
+            if (trace != null) trace.markFocusGranted();
 
             int state;
             switch (operation) {
@@ -21,6 +21,7 @@ import android.hardware.radio.RadioManager.BandDescriptor;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
 import com.android.car.radio.platform.RadioTunerExt;
@@ -49,6 +50,7 @@ abstract class AMFMProgramType extends ProgramType {
         List<BandDescriptor> bands = getBands(config);
         if (bands.size() == 0) {
             Log.e(TAG, "No " + getEnglishName() + " bands provided by the hardware");
+            if (result != null) result.onFinished(false);
             return;
         }
 
@@ -75,6 +77,19 @@ abstract class AMFMProgramType extends ProgramType {
 
     @Override
     public boolean isComplete(@NonNull RegionConfig config, int leadingDigits) {
+        return config.getDigitIndex(this).isComplete(leadingDigits);
+    }
+
+    @Override
+    public int getValidAppendicesMask(@NonNull RegionConfig config, int leadingDigits) {
+        return config.getDigitIndex(this).getValidAppendices(leadingDigits);
+    }
+
+    /**
+     * Reference implementation of {@link #isComplete}, computed without the index.
+     */
+    @VisibleForTesting
+    boolean computeIsComplete(@NonNull RegionConfig config, int leadingDigits) {
         int frequencyKhz = leadingDigits * getLeadingDigitsFactor();
 
         for (BandDescriptor band : getBands(config)) {
@@ -101,9 +116,12 @@ abstract class AMFMProgramType extends ProgramType {
         return ((a - 1) / b) + 1;
     }
 
-    @Override
+    /**
+     * Reference implementation of {@link #getValidAppendices}, computed without the index.
+     */
+    @VisibleForTesting
     @NonNull
-    public boolean[] getValidAppendices(@NonNull RegionConfig config, int leadingDigits) {
+    boolean[] computeValidAppendices(@NonNull RegionConfig config, int leadingDigits) {
         /* TL;DR: This algorithm iterates through all [3] channels within the range [2] to determine
          * all valid digits on the specified index [1].
          *
@@ -0,0 +1,123 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.bands;
+
+import android.hardware.radio.RadioManager.BandDescriptor;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed index of channel numbers, as typed on the manual tuner dialpad.
+ *
+ * For every prefix of every channel's display form (i.e. 8, 88 and 885 for 88.5 MHz), the index
+ * holds a bitmask of digits that may follow it and a flag stating whether the prefix is a complete
+ * channel. Since the dialpad doesn't allow leading zeros, every prefix is uniquely identified by
+ * its numeric value, which is the key of an open-addressing hash table. Lookups are O(1) and
+ * don't allocate.
+ */
+final class ChannelDigitIndex {
+    /** Bitmask of all digits. */
+    static final int DIGITS_MASK = (1 << 10) - 1;
+
+    private static final int COMPLETE_FLAG = 1 << 10;
+
+    // open-addressing table: slot is free if mFlags[slot] == 0
+    private final int[] mPrefixes;
+    private final int[] mFlags;
+    private final int mMask;
+
+    /**
+     * Builds the index for a given set of bands.
+     *
+     * @param bands Band descriptors
+     * @param displayFactor The factor converting display form to frequency in kHz
+     */
+    ChannelDigitIndex(@NonNull List<BandDescriptor> bands, int displayFactor) {
+        Map<Integer, Integer> flags = new HashMap<>();
+        for (BandDescriptor band : bands) {
+            int spacing = band.getSpacing();
+            if (spacing <= 0) continue;
+            for (int freq = band.getLowerLimit(); freq <= band.getUpperLimit(); freq += spacing) {
+                int display = freq / displayFactor;
+                if (display <= 0) continue;
+                // the empty prefix (0) may be followed by the first digit, and so on
+                for (int divisor = highestPowerOf10(display); divisor > 0; divisor /= 10) {
+                    int prefix = display / divisor / 10;
+                    int digit = display / divisor % 10;
+                    flags.merge(prefix, 1 << digit, (a, b) -> a | b);
+                }
+                if (freq % displayFactor == 0) flags.merge(display, COMPLETE_FLAG, (a, b) -> a | b);
+            }
+        }
+
+        // keep load factor at or below 0.5
+        int capacity = Integer.highestOneBit(Math.max(flags.size(), 1) * 4 - 1);
+        mPrefixes = new int[capacity];
+        mFlags = new int[capacity];
+        mMask = capacity - 1;
+        for (Map.Entry<Integer, Integer> entry : flags.entrySet()) {
+            int slot = findSlot(entry.getKey());
+            mPrefixes[slot] = entry.getKey();
+            mFlags[slot] = entry.getValue();
+        }
+    }
+
+    private static int highestPowerOf10(int number) {
+        int power = 1;
+        while (number / power >= 10) power *= 10;
+        return power;
+    }
+
+    private static int hash(int prefix) {
+        int h = prefix * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /* Returns a slot holding a given prefix or the first free slot, where it would go. */
+    private int findSlot(int prefix) {
+        int slot = hash(prefix) & mMask;
+        while (mFlags[slot] != 0 && mPrefixes[slot] != prefix) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    private int getFlags(int prefix) {
+        if (prefix < 0) return 0;
+        return mFlags[findSlot(prefix)];
+    }
+
+    /**
+     * Checks, if a given prefix is a complete channel number.
+     */
+    boolean isComplete(int leadingDigits) {
+        return (getFlags(leadingDigits) & COMPLETE_FLAG) != 0;
+    }
+
+    /**
+     * Returns a bitmask of digits that may be appended to a given prefix.
+     *
+     * @return Bitmask, where bit {@code i} is set if digit {@code i} may be appended
+     */
+    int getValidAppendices(int leadingDigits) {
+        return getFlags(leadingDigits) & DIGITS_MASK;
+    }
+}
@@ -50,6 +50,7 @@ class DABProgramType extends ProgramType {
     public void tuneToDefault(@NonNull RadioTunerExt tuner, @NonNull RegionConfig config,
             @Nullable TuneCallback result) {
         Log.e(TAG, "Tunning to a default DAB channel is not supported yet");
+        if (result != null) result.onFinished(false);
     }
 
     @Override
@@ -59,8 +60,7 @@ class DABProgramType extends ProgramType {
     }
 
     @Override
-    @NonNull
-    public boolean[] getValidAppendices(@NonNull RegionConfig config, int leadingDigits) {
+    public int getValidAppendicesMask(@NonNull RegionConfig config, int leadingDigits) {
         throw new UnsupportedOperationException("Manual entry of DAB channels is not supported");
     }
 
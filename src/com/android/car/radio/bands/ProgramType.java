@@ -100,7 +100,8 @@ public abstract class ProgramType implements Parcelable {
      *
      * @param tuner Tuner to take action on.
      * @param config Region config (i.e. frequency ranges).
-     * @param result Callback for tune success/failure.
+     * @param result Callback for tune success/failure, also called if there is no default
+     *        channel to tune to.
      */
     public abstract void tuneToDefault(@NonNull RadioTunerExt tuner, @NonNull RegionConfig config,
             @Nullable TuneCallback result);
@@ -160,7 +161,24 @@ public abstract class ProgramType implements Parcelable {
      *         append {@code i} to {@code leadingDigits}
      */
     @NonNull
-    public abstract boolean[] getValidAppendices(@NonNull RegionConfig config, int leadingDigits);
+    public boolean[] getValidAppendices(@NonNull RegionConfig config, int leadingDigits) {
+        int mask = getValidAppendicesMask(config, leadingDigits);
+        boolean[] digits = new boolean[10];
+        for (int i = 0; i < 10; i++) {
+            digits[i] = (mask & (1 << i)) != 0;
+        }
+        return digits;
+    }
+
+    /**
+     * Allocation-free variant of {@link #getValidAppendices}.
+     *
+     * @param config Regional config.
+     * @param leadingDigits Channel prefix.
+     * @return a bitmask, where bit {@code i} is set if it's possible to append {@code i} to
+     *         {@code leadingDigits}
+     */
+    public abstract int getValidAppendicesMask(@NonNull RegionConfig config, int leadingDigits);
 
     /**
      * Format partial channel number.
@@ -43,13 +43,14 @@ public final class RegionConfig implements Parcelable {
     private final List<BandDescriptor> mAmConfig;
     private final List<BandDescriptor> mFmConfig;
 
+    // manual tuner indexes, built as soon as the config arrives
+    private final ChannelDigitIndex mAmDigitIndex;
+    private final ChannelDigitIndex mFmDigitIndex;
+
     public RegionConfig(@Nullable List<BandDescriptor> amFmConfig) {
         mAmConfig = new ArrayList<>();
         mFmConfig = new ArrayList<>();
-        if (amFmConfig == null) {
-            mSupported = new ArrayList<>();
-            return;
-        }
+        if (amFmConfig == null) amFmConfig = Collections.emptyList();
 
         for (BandDescriptor band : amFmConfig) {
             if (band instanceof AmBandDescriptor) {
@@ -66,12 +67,22 @@ public final class RegionConfig implements Parcelable {
         Collections.sort(mAmConfig, cmp);
         Collections.sort(mFmConfig, cmp);
         mSupported = createSupportedProgramTypes();
+        mAmDigitIndex = createDigitIndex(mAmConfig, ProgramType.AM);
+        mFmDigitIndex = createDigitIndex(mFmConfig, ProgramType.FM);
     }
 
     private RegionConfig(@NonNull Parcel in) {
         mAmConfig = in.createTypedArrayList(BandDescriptor.CREATOR);
         mFmConfig = in.createTypedArrayList(BandDescriptor.CREATOR);
         mSupported = createSupportedProgramTypes();
+        mAmDigitIndex = createDigitIndex(mAmConfig, ProgramType.AM);
+        mFmDigitIndex = createDigitIndex(mFmConfig, ProgramType.FM);
+    }
+
+    @NonNull
+    private static ChannelDigitIndex createDigitIndex(@NonNull List<BandDescriptor> bands,
+            @NonNull ProgramType type) {
+        return new ChannelDigitIndex(bands, ((AMFMProgramType) type).getLeadingDigitsFactor());
     }
 
     @NonNull
@@ -97,6 +108,14 @@ public final class RegionConfig implements Parcelable {
         return mFmConfig;
     }
 
+    /**
+     * Returns the manual tuner index of a given AM/FM program type.
+     */
+    @NonNull
+    ChannelDigitIndex getDigitIndex(@NonNull AMFMProgramType type) {
+        return (type == ProgramType.AM) ? mAmDigitIndex : mFmDigitIndex;
+    }
+
     @Override
     public String toString() {
         return "RegionConfig{AM=" + mAmConfig + ", FM=" + mFmConfig + "}";
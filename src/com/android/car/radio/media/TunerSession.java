@@ -17,14 +17,19 @@
 package com.android.car.radio.media;
 
 import android.content.Context;
+import android.graphics.Bitmap;
 import android.hardware.radio.ProgramSelector;
 import android.hardware.radio.RadioManager.ProgramInfo;
+import android.hardware.radio.RadioMetadata;
+import android.media.MediaMetadata;
 import android.media.Rating;
 import android.media.session.MediaController;
 import android.media.session.MediaSession;
 import android.media.session.PlaybackState;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -34,13 +39,18 @@ import com.android.car.broadcastradio.support.media.BrowseTree;
 import com.android.car.broadcastradio.support.platform.ImageResolver;
 import com.android.car.broadcastradio.support.platform.ProgramInfoExt;
 import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.car.broadcastradio.support.platform.RadioMetadataExt;
 import com.android.car.radio.R;
+import com.android.car.radio.platform.ImageMemoryCache;
 import com.android.car.radio.service.RadioAppServiceWrapper;
 import com.android.car.radio.service.RadioAppServiceWrapper.ConnectionState;
 import com.android.car.radio.storage.RadioStorage;
 import com.android.car.radio.util.Log;
+import com.android.car.radio.util.RadioTrace;
+import com.android.internal.annotations.GuardedBy;
 
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Implementation of tuner's MediaSession.
@@ -49,10 +59,12 @@ public class TunerSession {
     private static final String TAG = "BcRadioApp.media";
 
     private final Object mLock = new Object();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
     private final MediaSession mSession;
 
     private final Context mContext;
     private final BrowseTree mBrowseTree;
+    @Nullable private final ImageMemoryCache mImageCache;
     @Nullable private final ImageResolver mImageResolver;
     private final RadioAppServiceWrapper mAppService;
 
@@ -61,14 +73,18 @@ public class TunerSession {
     private final PlaybackState.Builder mPlaybackStateBuilder =
             new PlaybackState.Builder();
     @Nullable private ProgramInfo mCurrentProgram;
+    @GuardedBy("mLock")
+    @Nullable private MediaMetadata mMetadata;
 
     public TunerSession(@NonNull Context context, @NonNull BrowseTree browseTree,
-            @NonNull RadioAppServiceWrapper appService, @Nullable ImageResolver imageResolver) {
+            @NonNull RadioAppServiceWrapper appService, @Nullable ImageMemoryCache imageCache) {
         mSession = new MediaSession(context, TAG);
 
         mContext = Objects.requireNonNull(context);
         mBrowseTree = Objects.requireNonNull(browseTree);
-        mImageResolver = imageResolver;
+        mImageCache = imageCache;
+        mImageResolver = imageCache == null
+                ? null : imageCache.getResolver(ImageMemoryCache.SIZE_SESSION_ART);
         mAppService = Objects.requireNonNull(appService);
 
         mRadioStorage = RadioStorage.getInstance(context);
@@ -98,16 +114,56 @@ public class TunerSession {
     }
 
     private void onSelfStateChanged(@ConnectionState int state) {
-        if (state == RadioAppServiceWrapper.STATE_ERROR) {
+        if (state == RadioAppServiceWrapper.STATE_ERROR
+                || state == RadioAppServiceWrapper.STATE_NOT_SUPPORTED) {
             mSession.setActive(false);
         }
     }
 
     private void updateMetadata(@Nullable ProgramInfo info) {
+        RadioTrace.begin("Radio.TunerSession.updateMetadata");
+        try {
+            synchronized (mLock) {
+                if (info == null) return;
+                boolean fav = mRadioStorage.isFavorite(info.getSelector());
+                mMetadata = ProgramInfoExt.toMediaMetadata(info, fav, mImageResolver);
+                mSession.setMetadata(mMetadata);
+                if (mImageCache != null) {
+                    RadioMetadata meta = ProgramInfoExt.getMetadata(info);
+                    fetchImage(RadioMetadataExt.getGlobalBitmapId(
+                            meta, RadioMetadata.METADATA_KEY_ICON));
+                    fetchImage(RadioMetadataExt.getGlobalBitmapId(
+                            meta, RadioMetadata.METADATA_KEY_ART));
+                }
+            }
+        } finally {
+            RadioTrace.end();
+        }
+    }
+
+    /* Image cache doesn't block on missing images, so refresh the metadata when an image
+     * that wasn't cached yet gets resolved. The future completes on a fetch thread, while
+     * metadata is updated on the main thread, as for LiveData updates. */
+    private void fetchImage(long globalId) {
+        if (globalId == 0) return;
+        CompletableFuture<Bitmap> future = mImageCache.resolveAsync(
+                globalId, ImageMemoryCache.SIZE_SESSION_ART);
+        if (future.isDone()) return;
+        future.thenAccept(bm -> {
+            if (bm == null) return;
+            mHandler.post(() -> {
+                // the metadata was refreshed in the meantime, don't loop on the same image
+                if (hasBitmap(bm)) return;
+                updateMetadata(mAppService.getCurrentProgram().getValue());
+            });
+        });
+    }
+
+    private boolean hasBitmap(@NonNull Bitmap bm) {
         synchronized (mLock) {
-            if (info == null) return;
-            boolean fav = mRadioStorage.isFavorite(info.getSelector());
-            mSession.setMetadata(ProgramInfoExt.toMediaMetadata(info, fav, mImageResolver));
+            if (mMetadata == null) return false;
+            return mMetadata.getBitmap(MediaMetadata.METADATA_KEY_ALBUM_ART) == bm
+                    || mMetadata.getBitmap(MediaMetadata.METADATA_KEY_DISPLAY_ICON) == bm;
         }
     }
 
@@ -154,12 +210,22 @@ public class TunerSession {
 
         @Override
         public void onSkipToNext() {
-            mAppService.seek(true);
+            RadioTrace.begin("Radio.TunerSession.onSkipToNext");
+            try {
+                mAppService.seek(true);
+            } finally {
+                RadioTrace.end();
+            }
         }
 
         @Override
         public void onSkipToPrevious() {
-            mAppService.seek(false);
+            RadioTrace.begin("Radio.TunerSession.onSkipToPrevious");
+            try {
+                mAppService.seek(false);
+            } finally {
+                RadioTrace.end();
+            }
         }
 
         @Override
@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.platform;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.radio.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-disk tier of {@link ImageMemoryCache}.
+ *
+ * Images are stored as compressed files named after their global ID. Writes are done on a
+ * background thread; when the directory exceeds its byte budget, the least recently used files
+ * are removed.
+ */
+class ImageDiskCache {
+    private static final String TAG = "BcRadioApp.images";
+    private static final String FILE_SUFFIX = ".png";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final File mDir;
+    private final long mMaxBytes;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+
+    ImageDiskCache(@NonNull File dir, long maxBytes) {
+        if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+        mDir = Objects.requireNonNull(dir);
+        mMaxBytes = maxBytes;
+    }
+
+    private File getFile(long globalId) {
+        return new File(mDir, Long.toHexString(globalId) + FILE_SUFFIX);
+    }
+
+    /**
+     * Loads an image from disk.
+     *
+     * @return Decoded image, or {@code null} if it's not stored
+     */
+    @Nullable
+    Bitmap get(long globalId) {
+        File file = getFile(globalId);
+        if (!file.exists()) return null;
+
+        Bitmap bm = BitmapFactory.decodeFile(file.getPath());
+        if (bm == null) {
+            Log.w(TAG, "Removing corrupted image file " + file);
+            file.delete();
+            return null;
+        }
+        // file modification time is used for LRU eviction
+        file.setLastModified(System.currentTimeMillis());
+        return bm;
+    }
+
+    /**
+     * Stores an image on disk asynchronously.
+     */
+    void put(long globalId, @NonNull Bitmap bm) {
+        mWriter.execute(() -> {
+            if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                Log.e(TAG, "Couldn't create image cache directory " + mDir);
+                return;
+            }
+            File file = getFile(globalId);
+            File tmpFile = new File(mDir, file.getName() + TMP_SUFFIX);
+            try (OutputStream out = new FileOutputStream(tmpFile)) {
+                bm.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } catch (IOException e) {
+                Log.e(TAG, "Couldn't write image file " + tmpFile, e);
+                tmpFile.delete();
+                return;
+            }
+            if (!tmpFile.renameTo(file)) {
+                Log.e(TAG, "Couldn't rename image file " + tmpFile);
+                tmpFile.delete();
+                return;
+            }
+            trim();
+        });
+    }
+
+    private void trim() {
+        File[] files = mDir.listFiles((dir, name) -> name.endsWith(FILE_SUFFIX));
+        if (files == null) return;
+
+        long total = 0;
+        for (File file : files) total += file.length();
+        if (total <= mMaxBytes) return;
+
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= mMaxBytes) break;
+            long length = file.length();
+            if (file.delete()) total -= length;
+        }
+    }
+
+    /**
+     * Stops the background writer. Pending writes are still completed.
+     */
+    void close() {
+        mWriter.shutdown();
+    }
+}
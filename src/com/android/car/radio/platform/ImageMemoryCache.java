@@ -16,46 +16,569 @@
 
 package com.android.car.radio.platform;
 
+import android.content.Context;
 import android.graphics.Bitmap;
+import android.os.SystemClock;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.car.broadcastradio.support.platform.ImageResolver;
+import com.android.car.radio.util.Log;
+import com.android.internal.annotations.GuardedBy;
 
+import java.io.File;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Two-tier cache of metadata images.
+ *
+ * The memory tier is limited by the total allocation size of cached bitmaps and evicts the least
+ * recently used entries. Resolved images are also stored in the disk tier (under the application
+ * cache directory), so they survive process restarts without another HAL round trip.
+ *
+ * Images that couldn't be resolved are remembered in a separate, count-limited negative cache
+ * for a short time only, so a transient HAL failure doesn't blank the image permanently.
+ *
+ * Images are fetched on a small background executor and concurrent requests for the same image
+ * share a single fetch. The cache lock is never held while fetching.
+ *
+ * Consumers that don't need full resolution images may request downscaled variants
+ * (see {@link ImageSize}), which are cached separately. Variants are created on the fetch
+ * executor as well, never on the caller's thread.
+ */
 public class ImageMemoryCache implements ImageResolver {
+    private static final String TAG = "BcRadioApp.images";
+    private static final String DISK_CACHE_DIR = "images";
+
+    private static final int FETCH_THREADS = 2;
+    private static final int FETCH_QUEUE_SIZE = 32;
+    private static final long FETCH_THREAD_KEEP_ALIVE_MS = 30000;
+
+    /** Full resolution image, as provided by the hardware. */
+    public static final int SIZE_FULL = 0;
+
+    /** Image bounded to {@link #THUMBNAIL_MAX_DIMENSION}, for list items. */
+    public static final int SIZE_THUMBNAIL = 1;
+
+    /** Image bounded to {@link #SESSION_ART_MAX_DIMENSION}, for MediaSession metadata. */
+    public static final int SIZE_SESSION_ART = 2;
+
+    /**
+     * Image size buckets.
+     */
+    @IntDef(value = {
+        SIZE_FULL,
+        SIZE_THUMBNAIL,
+        SIZE_SESSION_ART,
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ImageSize {}
+
+    private static final int THUMBNAIL_MAX_DIMENSION = 128;
+    private static final int SESSION_ART_MAX_DIMENSION = 512;
+
+    // part of the memory budget reserved for downscaled variants
+    private static final int VARIANTS_BUDGET_DIVISOR = 2;
+
+    // the variant tier holds at least the icon and art of a few recent programs, so the
+    // session art of the current program isn't evicted by its own icon or by list thumbnails
+    private static final int MIN_SESSION_ART_VARIANTS = 3;
+    private static final int MIN_THUMBNAIL_VARIANTS = 16;
+    private static final int BYTES_PER_PIXEL = 4;  // ARGB_8888
+    private static final long MIN_VARIANTS_BYTES = BYTES_PER_PIXEL * (
+            (long) MIN_SESSION_ART_VARIANTS * SESSION_ART_MAX_DIMENSION * SESSION_ART_MAX_DIMENSION
+            + (long) MIN_THUMBNAIL_VARIANTS * THUMBNAIL_MAX_DIMENSION * THUMBNAIL_MAX_DIMENSION);
+
     private final RadioManagerExt mRadioManager;
-    private final Map<Long, Bitmap> mCache;
+    private final ImageDiskCache mDiskCache;
+    private final long mNegativeTtlMs;
 
-    public ImageMemoryCache(@NonNull RadioManagerExt radioManager, int cacheSize) {
+    @GuardedBy("mCache")
+    private final CacheMap<Long> mCache;
+    @GuardedBy("mCache")
+    private final CacheMap<VariantKey> mVariants;
+    // global ID -> expiration time of the negative entry (elapsed realtime)
+    @GuardedBy("mCache")
+    private final NegativeCacheMap mNegativeCache;
+
+    @GuardedBy("mCache")
+    private long mHitCount;
+    @GuardedBy("mCache")
+    private long mNegativeHitCount;
+    @GuardedBy("mCache")
+    private long mMissCount;
+    @GuardedBy("mCache")
+    private long mDiskHitCount;
+    @GuardedBy("mCache")
+    private long mHalFetchCount;
+    @GuardedBy("mCache")
+    private long mPrefetchCount;
+
+    private final Map<Long, CompletableFuture<Bitmap>> mInFlight = new ConcurrentHashMap<>();
+    private final Map<VariantKey, CompletableFuture<Bitmap>> mVariantsInFlight =
+            new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor mFetchExecutor = new ThreadPoolExecutor(
+            FETCH_THREADS, FETCH_THREADS, FETCH_THREAD_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(FETCH_QUEUE_SIZE));
+
+    /**
+     * Cache statistics snapshot.
+     */
+    public static final class Stats {
+        /** Lookups answered with an image from the memory tier. */
+        public final long hits;
+        /** Lookups answered from the negative cache (no HAL call made). */
+        public final long negativeHits;
+        /** Lookups that required a fetch. */
+        public final long misses;
+        /** Fetches answered from the disk tier. */
+        public final long diskHits;
+        /** Fetches that called the HAL. */
+        public final long halFetches;
+        /** Prefetches started; these are not counted as lookups. */
+        public final long prefetches;
+
+        private Stats(long hits, long negativeHits, long misses, long diskHits, long halFetches,
+                long prefetches) {
+            this.hits = hits;
+            this.negativeHits = negativeHits;
+            this.misses = misses;
+            this.diskHits = diskHits;
+            this.halFetches = halFetches;
+            this.prefetches = prefetches;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{hits=" + hits + ", negativeHits=" + negativeHits + ", misses=" + misses
+                    + ", diskHits=" + diskHits + ", halFetches=" + halFetches
+                    + ", prefetches=" + prefetches + "}";
+        }
+    }
+
+    /**
+     * @param context Context used to locate the cache directory
+     * @param radioManager Source of the images
+     * @param memoryBytes Byte budget of the memory tier, including downscaled variants
+     * @param diskBytes Byte budget of the disk tier
+     * @param negativeTtlMs How long to remember that an image couldn't be resolved
+     * @param negativeMaxEntries Maximum number of remembered unresolved images
+     */
+    public ImageMemoryCache(@NonNull Context context, @NonNull RadioManagerExt radioManager,
+            long memoryBytes, long diskBytes, long negativeTtlMs, int negativeMaxEntries) {
+        if (negativeTtlMs < 0) {
+            throw new IllegalArgumentException("negativeTtlMs must not be negative");
+        }
         mRadioManager = Objects.requireNonNull(radioManager);
-        mCache = new CacheMap<>(cacheSize);
+        long variantsBytes = Math.min(memoryBytes,
+                Math.max(memoryBytes / VARIANTS_BUDGET_DIVISOR, MIN_VARIANTS_BYTES));
+        mCache = new CacheMap<>(memoryBytes - variantsBytes);
+        mVariants = new CacheMap<>(variantsBytes);
+        mNegativeCache = new NegativeCacheMap(negativeMaxEntries);
+        mNegativeTtlMs = negativeTtlMs;
+        mDiskCache = new ImageDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIR), diskBytes);
+        mFetchExecutor.allowCoreThreadTimeOut(true);
     }
 
+    /**
+     * Returns an image from the memory tier, without blocking.
+     *
+     * If the image is not cached yet, it's fetched in the background (see {@link #resolveAsync})
+     * and {@code null} is returned.
+     */
+    @Override
     public @Nullable Bitmap resolve(long globalId) {
+        CompletableFuture<Bitmap> cached = lookup(globalId);
+        if (cached != null) return cached.getNow(null);
+        fetchAsync(globalId);
+        return null;
+    }
+
+    /**
+     * Resolves an image asynchronously.
+     *
+     * Concurrent requests for the same image share a single fetch.
+     *
+     * @return Future completed with the image, or with {@code null} if it's not available
+     */
+    public @NonNull CompletableFuture<Bitmap> resolveAsync(long globalId) {
+        CompletableFuture<Bitmap> cached = lookup(globalId);
+        if (cached != null) return cached;
+        return fetchAsync(globalId);
+    }
+
+    /**
+     * Fetches an image into the cache, ahead of its use.
+     *
+     * Unlike {@link #resolveAsync(long)}, prefetches don't count as lookups, so they don't skew
+     * the hit rate; they are counted separately instead.
+     *
+     * @return Future completed with the image, or with {@code null} if it's not available
+     */
+    public @NonNull CompletableFuture<Bitmap> prefetchAsync(long globalId) {
+        synchronized (mCache) {
+            Bitmap bm = mCache.get(globalId);
+            if (bm != null) return CompletableFuture.completedFuture(bm);
+            Long expiration = mNegativeCache.get(globalId);
+            if (expiration != null && SystemClock.elapsedRealtime() < expiration) {
+                return CompletableFuture.completedFuture(null);
+            }
+            mPrefetchCount++;
+        }
+        return fetchAsync(globalId);
+    }
+
+    /**
+     * Fetches an image of a given size into the cache, ahead of its use.
+     *
+     * See {@link #prefetchAsync(long)}.
+     */
+    public @NonNull CompletableFuture<Bitmap> prefetchAsync(long globalId,
+            @ImageSize int size) {
+        if (size == SIZE_FULL) return prefetchAsync(globalId);
+
+        VariantKey key = new VariantKey(globalId, size);
+        synchronized (mCache) {
+            Bitmap variant = mVariants.get(key);
+            if (variant != null) return CompletableFuture.completedFuture(variant);
+        }
+        return prefetchAsync(globalId).thenCompose(full -> {
+            if (full == null) return CompletableFuture.completedFuture(null);
+            return createVariantAsync(key, full);
+        });
+    }
+
+    /**
+     * Returns an image of a given size from the memory tier, without blocking.
+     *
+     * Only images already cached in a given size are returned. Missing ones are fetched and
+     * downscaled in the background, see {@link #resolve(long)}.
+     */
+    public @Nullable Bitmap resolve(long globalId, @ImageSize int size) {
+        if (size == SIZE_FULL) return resolve(globalId);
+
+        VariantKey key = new VariantKey(globalId, size);
+        Bitmap full;
+        synchronized (mCache) {
+            Bitmap variant = mVariants.get(key);
+            if (variant != null) {
+                mHitCount++;
+                return variant;
+            }
+            full = mCache.get(globalId);
+            // small images have no variants, they are served as they are
+            if (full != null && fitsSize(full, size)) {
+                mHitCount++;
+                return full;
+            }
+        }
+        if (full == null) {
+            resolveAsync(globalId, size);
+        } else {
+            createVariantAsync(key, full);
+        }
+        return null;
+    }
+
+    /**
+     * Resolves an image of a given size asynchronously.
+     *
+     * See {@link #resolveAsync(long)}.
+     */
+    public @NonNull CompletableFuture<Bitmap> resolveAsync(long globalId, @ImageSize int size) {
+        if (size == SIZE_FULL) return resolveAsync(globalId);
+
+        VariantKey key = new VariantKey(globalId, size);
         synchronized (mCache) {
-            if (mCache.containsKey(globalId)) return mCache.get(globalId);
+            Bitmap variant = mVariants.get(key);
+            if (variant != null) {
+                mHitCount++;
+                return CompletableFuture.completedFuture(variant);
+            }
+        }
+        return resolveAsync(globalId).thenCompose(full -> {
+            if (full == null) return CompletableFuture.completedFuture(null);
+            return createVariantAsync(key, full);
+        });
+    }
+
+    /**
+     * Returns {@link ImageResolver} for images of a given size.
+     */
+    public @NonNull ImageResolver getResolver(@ImageSize int size) {
+        if (size == SIZE_FULL) return this;
+        return globalId -> resolve(globalId, size);
+    }
+
+    private static int getMaxDimension(@ImageSize int size) {
+        switch (size) {
+            case SIZE_THUMBNAIL:
+                return THUMBNAIL_MAX_DIMENSION;
+            case SIZE_SESSION_ART:
+                return SESSION_ART_MAX_DIMENSION;
+            default:
+                throw new IllegalArgumentException("Invalid image size: " + size);
+        }
+    }
+
+    private static boolean fitsSize(@NonNull Bitmap bm, @ImageSize int size) {
+        int maxDimension = getMaxDimension(size);
+        return bm.getWidth() <= maxDimension && bm.getHeight() <= maxDimension;
+    }
+
+    /* Downscales an image on the fetch executor; concurrent requests share a single job. */
+    private @NonNull CompletableFuture<Bitmap> createVariantAsync(@NonNull VariantKey key,
+            @NonNull Bitmap full) {
+        // small images are not copied, so don't account for them twice
+        if (fitsSize(full, key.size)) return CompletableFuture.completedFuture(full);
+
+        CompletableFuture<Bitmap> future = new CompletableFuture<>();
+        CompletableFuture<Bitmap> inFlight = mVariantsInFlight.putIfAbsent(key, future);
+        if (inFlight != null) return inFlight;
+
+        try {
+            mFetchExecutor.execute(() -> createVariant(key, full, future));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Too many pending image fetches, not downscaling " + key.globalId);
+            mVariantsInFlight.remove(key, future);
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private void createVariant(@NonNull VariantKey key, @NonNull Bitmap full,
+            @NonNull CompletableFuture<Bitmap> future) {
+        Bitmap variant = null;
+        try {
+            int width = full.getWidth();
+            int height = full.getHeight();
+            float scale = (float) getMaxDimension(key.size) / Math.max(width, height);
+            variant = Bitmap.createScaledBitmap(full, Math.max(1, Math.round(width * scale)),
+                    Math.max(1, Math.round(height * scale)), true);
+            synchronized (mCache) {
+                mVariants.put(key, variant);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Couldn't downscale image " + key.globalId, e);
+        } finally {
+            mVariantsInFlight.remove(key, future);
+            future.complete(variant);
+        }
+    }
+
+    /**
+     * Looks up the memory tier and the negative cache.
+     *
+     * @return Completed future, or {@code null} if the image has to be fetched
+     */
+    private @Nullable CompletableFuture<Bitmap> lookup(long globalId) {
+        synchronized (mCache) {
+            Bitmap bm = mCache.get(globalId);
+            if (bm != null) {
+                mHitCount++;
+                return CompletableFuture.completedFuture(bm);
+            }
+            Long expiration = mNegativeCache.get(globalId);
+            if (expiration != null) {
+                if (SystemClock.elapsedRealtime() < expiration) {
+                    mNegativeHitCount++;
+                    return CompletableFuture.completedFuture(null);
+                }
+                mNegativeCache.remove(globalId);
+            }
+            mMissCount++;
+            return null;
+        }
+    }
+
+    /**
+     * Checks, if the image lookup would be answered without fetching.
+     *
+     * This is either a cached image or a recent failure to resolve it. Doesn't affect statistics.
+     */
+    public boolean isCached(long globalId) {
+        synchronized (mCache) {
+            if (mCache.containsKey(globalId)) return true;
+            Long expiration = mNegativeCache.get(globalId);
+            return expiration != null && SystemClock.elapsedRealtime() < expiration;
+        }
+    }
+
+    /**
+     * Checks, if the lookup of an image of a given size would be answered without fetching.
+     *
+     * See {@link #isCached(long)}.
+     */
+    public boolean isCached(long globalId, @ImageSize int size) {
+        if (size == SIZE_FULL) return isCached(globalId);
+        synchronized (mCache) {
+            if (mVariants.containsKey(new VariantKey(globalId, size))) return true;
+            Bitmap full = mCache.get(globalId);
+            if (full != null) return fitsSize(full, size);
+            Long expiration = mNegativeCache.get(globalId);
+            return expiration != null && SystemClock.elapsedRealtime() < expiration;
+        }
+    }
+
+    private @NonNull CompletableFuture<Bitmap> fetchAsync(long globalId) {
+        CompletableFuture<Bitmap> future = new CompletableFuture<>();
+        CompletableFuture<Bitmap> inFlight = mInFlight.putIfAbsent(globalId, future);
+        if (inFlight != null) return inFlight;
+
+        try {
+            mFetchExecutor.execute(() -> fetch(globalId, future));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Too many pending image fetches, dropping " + globalId);
+            mInFlight.remove(globalId, future);
+            future.complete(null);
+        }
+        return future;
+    }
+
+    private void fetch(long globalId, @NonNull CompletableFuture<Bitmap> future) {
+        Bitmap bm = null;
+        try {
+            bm = mDiskCache.get(globalId);
+            boolean fromDisk = bm != null;
+            if (!fromDisk) {
+                bm = mRadioManager.getMetadataImage(globalId);
+                if (bm != null) mDiskCache.put(globalId, bm);
+            }
+            synchronized (mCache) {
+                if (fromDisk) {
+                    mDiskHitCount++;
+                } else {
+                    mHalFetchCount++;
+                }
+                if (bm != null) {
+                    mNegativeCache.remove(globalId);
+                    mCache.put(globalId, bm);
+                } else {
+                    mNegativeCache.put(globalId, SystemClock.elapsedRealtime() + mNegativeTtlMs);
+                }
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Couldn't fetch image " + globalId, e);
+        } finally {
+            mInFlight.remove(globalId, future);
+            future.complete(bm);
+        }
+    }
+
+    /**
+     * Returns the total size of the memory tier, in bytes.
+     */
+    public long getMemorySize() {
+        synchronized (mCache) {
+            return mCache.getSize() + mVariants.getSize();
+        }
+    }
+
+    /**
+     * Returns a snapshot of cache statistics.
+     */
+    public @NonNull Stats getStats() {
+        synchronized (mCache) {
+            return new Stats(mHitCount, mNegativeHitCount, mMissCount, mDiskHitCount,
+                    mHalFetchCount, mPrefetchCount);
+        }
+    }
+
+    /**
+     * Stops background fetches and disk writes.
+     */
+    public void close() {
+        mFetchExecutor.shutdownNow();
+        mDiskCache.close();
+    }
+
+    private static final class VariantKey {
+        public final long globalId;
+        @ImageSize
+        public final int size;
+
+        VariantKey(long globalId, @ImageSize int size) {
+            this.globalId = globalId;
+            this.size = size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(globalId, size);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof VariantKey)) return false;
+            VariantKey other = (VariantKey) obj;
+            return other.globalId == globalId && other.size == size;
+        }
+    }
+
+    private static class CacheMap<K> extends LinkedHashMap<K, Bitmap> {
+        private final long mMaxBytes;
+        private long mSize;
+
+        CacheMap(long maxBytes) {
+            super(16, 0.75f, true);  // access order, for LRU eviction
+            if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must not be negative");
+            mMaxBytes = maxBytes;
+        }
+
+        long getSize() {
+            return mSize;
+        }
+
+        @Override
+        public Bitmap put(@NonNull K key, @NonNull Bitmap value) {
+            Bitmap old = super.put(key, value);
+            if (old != null) mSize -= old.getAllocationByteCount();
+            mSize += value.getAllocationByteCount();
+            trim();
+            return old;
+        }
+
+        @Override
+        public Bitmap remove(Object key) {
+            Bitmap old = super.remove(key);
+            if (old != null) mSize -= old.getAllocationByteCount();
+            return old;
+        }
 
-            Bitmap bm = mRadioManager.getMetadataImage(globalId);
-            mCache.put(globalId, bm);
-            return bm;
+        private void trim() {
+            Iterator<Map.Entry<K, Bitmap>> it = entrySet().iterator();
+            // always keep the most recently used entry, even if it exceeds the budget alone
+            while (mSize > mMaxBytes && size() > 1 && it.hasNext()) {
+                mSize -= it.next().getValue().getAllocationByteCount();
+                it.remove();
+            }
         }
     }
 
-    private static class CacheMap<K, V> extends LinkedHashMap<K, V> {
+    private static class NegativeCacheMap extends LinkedHashMap<Long, Long> {
         private final int mMaxSize;
 
-        public CacheMap(int maxSize) {
+        NegativeCacheMap(int maxSize) {
             if (maxSize < 0) throw new IllegalArgumentException("maxSize must not be negative");
             mMaxSize = maxSize;
         }
 
         @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
             return size() > mMaxSize;
         }
     }
@@ -24,45 +24,95 @@ import android.hardware.radio.RadioTuner;
 import android.os.Handler;
 import android.os.HandlerThread;
 
+import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.car.broadcastradio.support.platform.RadioMetadataExt;
 import com.android.car.radio.util.Log;
+import com.android.internal.annotations.GuardedBy;
 
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
  * Proposed extensions to android.hardware.radio.RadioManager.
  *
  * They might eventually get pushed to the framework.
+ *
+ * Radio modules are assigned roles based on their properties: the foreground module is the
+ * first one with an audio source, and the background scanning module (if present) is the first
+ * other module supporting a band type of the foreground one, so that refreshing the program
+ * list doesn't interrupt the audible tuner. The HAL doesn't mark a module as a scanning tuner,
+ * so it can't be selected more precisely.
  */
 public class RadioManagerExt {
     private static final String TAG = "BcRadioApp.mgrext";
 
-    // For now, we open first radio module only.
-    private static final int HARDCODED_MODULE_INDEX = 0;
+    /**
+     * Module used for playback, with audio.
+     */
+    public static final int ROLE_FOREGROUND = 0;
+
+    /**
+     * Module used for program list scanning and artwork, without audio.
+     */
+    public static final int ROLE_BACKGROUND_SCAN = 1;
+
+    /**
+     * Role of a radio module.
+     */
+    @IntDef(value = {
+        ROLE_FOREGROUND,
+        ROLE_BACKGROUND_SCAN,
+    })
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ModuleRole {}
 
     private final Object mLock = new Object();
     private final Context mContext;
 
     private final HandlerThread mCallbackHandlerThread = new HandlerThread("BcRadioApp.cbhandler");
+    private final HandlerThread mDispatchHandlerThread = new HandlerThread("BcRadioApp.dispatch");
 
-    private final @NonNull RadioManager mRadioManager;
+    // null for fakes only, which don't access the broadcast radio service
+    private final @Nullable RadioManager mRadioManager;
+    @GuardedBy("mLock")
     private List<RadioManager.ModuleProperties> mModules;
+    @GuardedBy("mLock")
+    private @Nullable RadioManager.ModuleProperties mForegroundModule;
+    @GuardedBy("mLock")
+    private @Nullable RadioManager.ModuleProperties mBackgroundScanModule;
+    @GuardedBy("mLock")
     private @Nullable List<BandDescriptor> mAmFmRegionConfig;
 
+    // module ID -> open session
+    private final Map<Integer, RadioTuner> mSessions = new ConcurrentHashMap<>();
+
     public RadioManagerExt(@NonNull Context ctx) {
+        this(ctx, Objects.requireNonNull((RadioManager) ctx.getSystemService(
+                Context.RADIO_SERVICE), "RadioManager could not be loaded"));
+    }
+
+    /**
+     * Creates an instance for fakes, which override all methods accessing the hardware
+     * (that is: {@link #openSession}, {@link #hasBackgroundScanModule} and
+     * {@link #getAmFmRegionConfig}) and pass {@code null} as the radio manager.
+     */
+    @VisibleForTesting
+    protected RadioManagerExt(@NonNull Context ctx, @Nullable RadioManager radioManager) {
         mContext = Objects.requireNonNull(ctx);
-        mRadioManager = (RadioManager)ctx.getSystemService(Context.RADIO_SERVICE);
-        Objects.requireNonNull(mRadioManager, "RadioManager could not be loaded");
+        mRadioManager = radioManager;
         mCallbackHandlerThread.start();
+        mDispatchHandlerThread.start();
     }
 
     /* Select only one region. HAL 2.x moves region selection responsibility from the app to the
@@ -77,39 +127,108 @@ public class RadioManagerExt {
                 collect(Collectors.toList());
     }
 
-    private void initModules() {
+    @NonNull
+    private List<RadioManager.ModuleProperties> getModules() {
         synchronized (mLock) {
-            if (mModules != null) return;
+            if (mModules != null) return mModules;
 
-            mModules = new ArrayList<>();
-            int status = mRadioManager.listModules(mModules);
+            // fakes don't have any modules
+            List<RadioManager.ModuleProperties> modules = new ArrayList<>();
+            int status = mRadioManager == null ? RadioManager.STATUS_OK
+                    : mRadioManager.listModules(modules);
             if (status != RadioManager.STATUS_OK) {
                 Log.w(TAG, "Couldn't get radio module list: " + status);
-                return;
+                modules.clear();
+            } else if (modules.size() == 0) {
+                Log.i(TAG, "No radio modules on this device");
+            } else {
+                Log.i(TAG, "Found " + modules.size() + " radio module(s)");
+                assignRolesLocked(modules);
             }
+            mModules = modules;
+            return modules;
+        }
+    }
 
-            if (mModules.size() == 0) {
-                Log.i(TAG, "No radio modules on this device");
-                return;
+    private static boolean hasCommonBandType(@NonNull RadioManager.ModuleProperties a,
+            @NonNull RadioManager.ModuleProperties b) {
+        for (BandDescriptor bandA : a.getBands()) {
+            for (BandDescriptor bandB : b.getBands()) {
+                if (bandA.getType() == bandB.getType()) return true;
             }
+        }
+        return false;
+    }
 
-            RadioManager.ModuleProperties module = mModules.get(HARDCODED_MODULE_INDEX);
-            mAmFmRegionConfig = reduceAmFmBands(module.getBands());
+    @GuardedBy("mLock")
+    private void assignRolesLocked(@NonNull List<RadioManager.ModuleProperties> modules) {
+        RadioManager.ModuleProperties foreground = modules.stream()
+                .filter(module -> module.getNumAudioSources() > 0).findFirst().orElse(null);
+        if (foreground == null) {
+            Log.w(TAG, "No radio module has an audio source, using the first one for playback");
+            foreground = modules.get(0);
         }
+        RadioManager.ModuleProperties fg = foreground;
+        mForegroundModule = foreground;
+        mBackgroundScanModule = modules.stream()
+                .filter(module -> module != fg && hasCommonBandType(fg, module))
+                .findFirst().orElse(null);
+        Log.i(TAG, "Foreground module: " + foreground.getId() + ", background scan module: "
+                + (mBackgroundScanModule == null ? "none" : mBackgroundScanModule.getId()));
+
+        // region config is defined by the foreground module
+        mAmFmRegionConfig = reduceAmFmBands(foreground.getBands());
     }
 
     /**
-     * Opens a session to interact with hardware tuner.
+     * Returns the module assigned to a given role.
+     *
+     * @return Module properties, or {@code null} if there is no module for this role
+     */
+    private @Nullable RadioManager.ModuleProperties getModule(@ModuleRole int role) {
+        getModules();
+        synchronized (mLock) {
+            return role == ROLE_FOREGROUND ? mForegroundModule : mBackgroundScanModule;
+        }
+    }
+
+    /**
+     * Checks, if there is a module dedicated for background scanning.
+     */
+    public boolean hasBackgroundScanModule() {
+        return getModule(ROLE_BACKGROUND_SCAN) != null;
+    }
+
+    /**
+     * Opens a session to interact with the foreground hardware tuner.
      *
      * @param callback Session callback.
      * @param handler The Handler on which the callbacks will be received,
-     *        {@code null} for default handler.
+     *        {@code null} for a background dispatch thread (not the main thread).
      */
     public @Nullable RadioTunerExt openSession(RadioTuner.Callback callback, Handler handler) {
-        Log.i(TAG, "Opening broadcast radio session...");
+        return openSession(ROLE_FOREGROUND, callback, handler);
+    }
 
-        initModules();
-        if (mModules.size() == 0) return null;
+    /**
+     * Opens a session to interact with hardware tuner of a given role.
+     *
+     * Only the foreground session routes audio.
+     *
+     * @param role Role of the module to open.
+     * @param callback Session callback.
+     * @param handler The Handler on which the callbacks will be received,
+     *        {@code null} for a background dispatch thread (not the main thread).
+     * @return Tuner session, or {@code null} if there is no module for this role or it couldn't
+     *         be opened
+     */
+    public @Nullable RadioTunerExt openSession(@ModuleRole int role,
+            RadioTuner.Callback callback, Handler handler) {
+        Log.i(TAG, "Opening broadcast radio session, role " + role + "...");
+
+        RadioManager.ModuleProperties module = getModule(role);
+        if (module == null) return null;
+        boolean withAudio = (role == ROLE_FOREGROUND);
 
         /* We won't need custom default wrapper when we push these proposed extensions to the
          * framework; this is solely to avoid deadlock on onConfigurationChanged callback versus
@@ -117,17 +236,15 @@ public class RadioManagerExt {
          */
         Handler hwHandler = new Handler(mCallbackHandlerThread.getLooper());
 
-        RadioManager.ModuleProperties module = mModules.get(HARDCODED_MODULE_INDEX);
+        if (handler == null) handler = new Handler(mDispatchHandlerThread.getLooper());
         TunerCallbackAdapterExt cbExt = new TunerCallbackAdapterExt(callback, handler);
 
         RadioTuner tuner = mRadioManager.openTuner(
                 module.getId(),
                 null,  // BandConfig - let the service automatically select one.
-                true,  // withAudio
+                withAudio,
                 cbExt, hwHandler);
-        mSessions.put(module.getId(), tuner);
         if (tuner == null) return null;
-        RadioMetadataExt.setModuleId(module.getId());
 
         if (module.isInitializationRequired()) {
             if (!cbExt.waitForInitialization()) {
@@ -137,27 +254,60 @@ public class RadioManagerExt {
             }
         }
 
-        return new RadioTunerExt(mContext, tuner, cbExt);
+        mSessions.put(module.getId(), tuner);
+        /* Global image IDs are encoded by the support library with a single, process-wide module
+         * ID, so it always refers to the foreground module. */
+        if (role == ROLE_FOREGROUND) RadioMetadataExt.setModuleId(module.getId());
+
+        return new RadioTunerExt(mContext, tuner, cbExt, withAudio);
+    }
+
+    /**
+     * Notifies that a session is closed, so it's no longer used to fetch images.
+     */
+    public void onSessionClosed(@NonNull RadioTunerExt tuner) {
+        mSessions.values().remove(tuner.getTuner());
     }
 
     public @Nullable List<BandDescriptor> getAmFmRegionConfig() {
-        initModules();
-        return mAmFmRegionConfig;
+        getModules();
+        synchronized (mLock) {
+            return mAmFmRegionConfig;
+        }
     }
 
-    /* This won't be necessary when we push this code to the framework,
-     * as we really need only module references. */
-    private static Map<Integer, RadioTuner> mSessions = new HashMap<>();
+    /**
+     * Re-encodes a global image ID for the module of a given role.
+     *
+     * The support library encodes all global image IDs with the foreground module's ID, so the
+     * IDs carried by program infos of the background scanning module have to be re-encoded
+     * before they are resolved. Local IDs of different modules are not related.
+     *
+     * @param role Role of the module whose program info carried the image ID.
+     * @param globalId Image ID encoded by the support library.
+     * @return Global image ID for the given module
+     */
+    public long getModuleImageId(@ModuleRole int role, long globalId) {
+        if (globalId == 0 || role == ROLE_FOREGROUND) return globalId;
+        RadioManager.ModuleProperties module = getModule(role);
+        if (module == null) return globalId;
+        return ((long) module.getId() << 32) | (globalId & 0xFFFFFFFFL);
+    }
 
+    /**
+     * Fetches an image from the module that provided its ID.
+     *
+     * @param globalId Image ID, see {@link #getModuleImageId}
+     * @return Image, or {@code null} if it's not available or the module's session is closed
+     */
     public @Nullable Bitmap getMetadataImage(long globalId) {
         if (globalId == 0) return null;
 
         int moduleId = (int)(globalId >>> 32);
         int localId = (int)(globalId & 0xFFFFFFFF);
 
+        // local IDs are only meaningful for the module that assigned them
         RadioTuner tuner = mSessions.get(moduleId);
-        if (tuner == null) return null;
-
-        return tuner.getMetadataImage(localId);
+        return tuner == null ? null : tuner.getMetadataImage(localId);
     }
 }
@@ -31,6 +31,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.car.radio.util.Log;
+import com.android.car.radio.util.RadioTrace;
 
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -51,6 +52,9 @@ public class RadioTunerExt {
 
     @Nullable private ProgramSelector mOperationSelector;  // null for seek operations
     @Nullable private TuneCallback mOperationResultCb;
+    @Nullable private TuneLatencyTracker.Trace mOperationTrace;
+    // updated before the operation it completes is reported as finished
+    @Nullable private RadioManager.ProgramInfo mProgramInfo;
 
     /**
      * A callback handling tune/seek operation result.
@@ -75,11 +79,14 @@ public class RadioTunerExt {
     }
 
     RadioTunerExt(@NonNull Context context, @NonNull RadioTuner tuner,
-            @NonNull TunerCallbackAdapterExt cbExt) {
+            @NonNull TunerCallbackAdapterExt cbExt, boolean withAudio) {
         mTuner = Objects.requireNonNull(tuner);
         cbExt.setTuneFailedCallback(this::onTuneFailed);
         cbExt.setProgramInfoCallback(this::onProgramInfoChanged);
 
+        // background scanning sessions don't route audio
+        if (!withAudio) return;
+
         final AudioDeviceInfo tunerDevice = findTunerDevice(context, null);
         if (tunerDevice == null) {
             Log.e(TAG, "No TUNER_DEVICE found on board");
@@ -112,16 +119,35 @@ public class RadioTunerExt {
      * See {@link RadioTuner#scan}.
      */
     public void seek(boolean forward, @Nullable TuneCallback resultCb) {
+        seek(forward, resultCb, null);
+    }
+
+    /**
+     * See {@link RadioTuner#scan}.
+     *
+     * @param trace Latency trace, finished with the operation
+     */
+    public void seek(boolean forward, @Nullable TuneCallback resultCb,
+            @Nullable TuneLatencyTracker.Trace trace) {
         synchronized (mTuneLock) {
             synchronized (mLock) {
                 markOperationFinishedLocked(false);
                 mOperationResultCb = resultCb;
+                mOperationTrace = trace;
             }
 
             mTuner.cancel();
-            int res = mTuner.scan(
-                    forward ? RadioTuner.DIRECTION_UP : RadioTuner.DIRECTION_DOWN, false);
+            if (trace != null) trace.markHalCallIssued();
+            RadioTrace.begin("Radio.RadioTunerExt.seek");
+            int res;
+            try {
+                res = mTuner.scan(
+                        forward ? RadioTuner.DIRECTION_UP : RadioTuner.DIRECTION_DOWN, false);
+            } finally {
+                RadioTrace.end();
+            }
             if (res != RadioManager.STATUS_OK) {
+                failOperation();
                 throw new RuntimeException("Seek failed with result of " + res);
             }
         }
@@ -131,15 +157,37 @@ public class RadioTunerExt {
      * See {@link RadioTuner#step}.
      */
     public void step(boolean forward, @Nullable TuneCallback resultCb) {
+        step(forward, resultCb, null);
+    }
+
+    /**
+     * See {@link RadioTuner#step}.
+     *
+     * @param trace Latency trace, finished with the operation
+     */
+    public void step(boolean forward, @Nullable TuneCallback resultCb,
+            @Nullable TuneLatencyTracker.Trace trace) {
         synchronized (mTuneLock) {
-            markOperationFinishedLocked(false);
-            mOperationResultCb = resultCb;
-        }
-        mTuner.cancel();
-        int res =
-                mTuner.step(forward ? RadioTuner.DIRECTION_UP : RadioTuner.DIRECTION_DOWN, false);
-        if (res != RadioManager.STATUS_OK) {
-            throw new RuntimeException("Step failed with result of " + res);
+            synchronized (mLock) {
+                markOperationFinishedLocked(false);
+                mOperationResultCb = resultCb;
+                mOperationTrace = trace;
+            }
+
+            mTuner.cancel();
+            if (trace != null) trace.markHalCallIssued();
+            RadioTrace.begin("Radio.RadioTunerExt.step");
+            int res;
+            try {
+                res = mTuner.step(
+                        forward ? RadioTuner.DIRECTION_UP : RadioTuner.DIRECTION_DOWN, false);
+            } finally {
+                RadioTrace.end();
+            }
+            if (res != RadioManager.STATUS_OK) {
+                failOperation();
+                throw new RuntimeException("Step failed with result of " + res);
+            }
         }
     }
 
@@ -147,15 +195,56 @@ public class RadioTunerExt {
      * See {@link RadioTuner#tune}.
      */
     public void tune(@NonNull ProgramSelector selector, @Nullable TuneCallback resultCb) {
+        tune(selector, resultCb, null);
+    }
+
+    /**
+     * See {@link RadioTuner#tune}.
+     *
+     * @param trace Latency trace, finished with the operation
+     */
+    public void tune(@NonNull ProgramSelector selector, @Nullable TuneCallback resultCb,
+            @Nullable TuneLatencyTracker.Trace trace) {
         synchronized (mTuneLock) {
             synchronized (mLock) {
                 markOperationFinishedLocked(false);
                 mOperationSelector = selector;
                 mOperationResultCb = resultCb;
+                mOperationTrace = trace;
             }
 
             mTuner.cancel();
-            mTuner.tune(selector);
+            if (trace != null) trace.markHalCallIssued();
+            RadioTrace.begin("Radio.RadioTunerExt.tune");
+            try {
+                mTuner.tune(selector);
+            } catch (RuntimeException e) {
+                failOperation();
+                throw e;
+            } finally {
+                RadioTrace.end();
+            }
+        }
+    }
+
+    /**
+     * Returns the program info last reported by the tuner.
+     *
+     * Unlike state propagated through asynchronous callbacks, it already reflects the result of
+     * an operation when its result callback is called.
+     */
+    public @Nullable RadioManager.ProgramInfo getProgramInfo() {
+        synchronized (mLock) {
+            return mProgramInfo;
+        }
+    }
+
+    /**
+     * States whether a tune, seek or step operation is in progress.
+     */
+    public boolean isTunePending() {
+        synchronized (mLock) {
+            return mOperationResultCb != null;
         }
     }
 
@@ -185,9 +274,12 @@ public class RadioTunerExt {
         }
 
         TuneCallback cb = mOperationResultCb;
+        TuneLatencyTracker.Trace trace = mOperationTrace;
         mOperationSelector = null;
         mOperationResultCb = null;
+        mOperationTrace = null;
 
+        if (trace != null) trace.finish(succeeded);
         cb.onFinished(succeeded);
 
         if (mOperationSelector != null) {
@@ -196,6 +288,13 @@ public class RadioTunerExt {
         }
     }
 
+    /* The operation won't get any result from the tuner, so it's not left pending. */
+    private void failOperation() {
+        synchronized (mLock) {
+            markOperationFinishedLocked(false);
+        }
+    }
+
     private boolean isMatching(@NonNull ProgramSelector currentOperation,
             @NonNull ProgramSelector event) {
         ProgramSelector.Identifier pri = currentOperation.getPrimaryId();
@@ -204,6 +303,7 @@ public class RadioTunerExt {
 
     private void onProgramInfoChanged(RadioManager.ProgramInfo info) {
         synchronized (mLock) {
+            mProgramInfo = info;
             if (mOperationResultCb == null) return;
             // if we're seeking, all program info chanes does match
             if (mOperationSelector != null) {
@@ -248,6 +348,12 @@ public class RadioTunerExt {
         return mTuner.getDynamicProgramList(filter);
     }
 
+    /* Underlying framework tuner, for the RadioManagerExt session registry. */
+    @NonNull
+    RadioTuner getTuner() {
+        return mTuner;
+    }
+
     public void close() {
         synchronized (mLock) {
             markOperationFinishedLocked(false);
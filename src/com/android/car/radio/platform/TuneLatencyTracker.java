@@ -0,0 +1,238 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.platform;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.radio.util.LatencyHistogram;
+import com.android.car.radio.util.RadioTrace;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects end-to-end latencies of tune, seek and step operations.
+ *
+ * Every operation is split into stages: waiting for audio focus, issuing the HAL call and waiting
+ * for the matching program info (or tune failure). Each stage, as well as the whole operation,
+ * is recorded in a {@link LatencyHistogram} per operation type and band. The most recent
+ * operations are also kept in a small ring buffer. Recording is lock-free, so the tracker is
+ * always enabled.
+ */
+public class TuneLatencyTracker {
+    /** From request to audio focus granted. */
+    public static final int STAGE_FOCUS = 0;
+
+    /** From audio focus granted to the HAL call issued. */
+    public static final int STAGE_HAL_CALL = 1;
+
+    /** From the HAL call issued to the operation result. */
+    public static final int STAGE_RESULT = 2;
+
+    /** Whole operation, successful ones only. */
+    public static final int STAGE_TOTAL = 3;
+
+    private static final String[] STAGE_NAMES = {"focus", "halCall", "result", "total"};
+
+    // indexed with AudioStreamController.OPERATION_* constants
+    private static final String[] OPERATION_NAMES =
+            {null, "tune", "seekFwd", "seekBkw", "stepFwd", "stepBkw"};
+    private static final String[] OPERATION_TRACE_SECTIONS = {null, "Radio.op.tune",
+            "Radio.op.seekFwd", "Radio.op.seekBkw", "Radio.op.stepFwd", "Radio.op.stepBkw"};
+
+    // indexed with ProgramType.ID_* constants, 0 being an unknown band
+    private static final String[] BAND_NAMES = {"unknown", "AM", "FM", "DAB"};
+
+    private static final int RECENT_OPERATIONS = 32;
+
+    private static final int STAGE_COUNT = STAGE_NAMES.length;
+    private static final int OPERATION_COUNT = OPERATION_NAMES.length;
+    private static final int BAND_COUNT = BAND_NAMES.length;
+
+    // created on first use, so that unused combinations don't take memory
+    private final AtomicReferenceArray<LatencyHistogram> mHistograms =
+            new AtomicReferenceArray<>(OPERATION_COUNT * BAND_COUNT * STAGE_COUNT);
+    private final AtomicLongArray mFailures = new AtomicLongArray(OPERATION_COUNT * BAND_COUNT);
+
+    // ring buffer of recently finished operations
+    private final AtomicReferenceArray<Result> mRecent =
+            new AtomicReferenceArray<>(RECENT_OPERATIONS);
+    private final AtomicLong mRecentCount = new AtomicLong();
+
+    /* Immutable record of a finished operation. */
+    private static final class Result {
+        final int key;
+        final long finishedAtMs;
+        final long totalUs;
+        final boolean succeeded;
+
+        Result(int key, long finishedAtMs, long totalUs, boolean succeeded) {
+            this.key = key;
+            this.finishedAtMs = finishedAtMs;
+            this.totalUs = totalUs;
+            this.succeeded = succeeded;
+        }
+    }
+
+    /**
+     * Timestamps of a single operation.
+     *
+     * Stages may be marked from different threads; the trace is finished only once. The whole
+     * operation is also reported as an asynchronous systrace section.
+     */
+    public final class Trace {
+        private final int mKey;
+        private final int mCookie = RadioTrace.newCookie();
+        private final long mStartNs = SystemClock.elapsedRealtimeNanos();
+        private volatile long mFocusNs;
+        private volatile long mHalCallNs;
+        private final AtomicBoolean mIsFinished = new AtomicBoolean();
+
+        private Trace(int key) {
+            mKey = key;
+            RadioTrace.beginAsync(OPERATION_TRACE_SECTIONS[key / BAND_COUNT], mCookie);
+        }
+
+        /**
+         * Marks audio focus granted.
+         */
+        public void markFocusGranted() {
+            mFocusNs = SystemClock.elapsedRealtimeNanos();
+        }
+
+        /**
+         * Marks the HAL call issued.
+         */
+        public void markHalCallIssued() {
+            mHalCallNs = SystemClock.elapsedRealtimeNanos();
+        }
+
+        /**
+         * Records the operation result. Subsequent calls are ignored.
+         */
+        public void finish(boolean succeeded) {
+            if (!mIsFinished.compareAndSet(false, true)) return;
+            long now = SystemClock.elapsedRealtimeNanos();
+            RadioTrace.endAsync(OPERATION_TRACE_SECTIONS[mKey / BAND_COUNT], mCookie);
+            long focusNs = mFocusNs;
+            long halCallNs = mHalCallNs;
+
+            if (focusNs != 0) {
+                record(mKey, STAGE_FOCUS, focusNs - mStartNs);
+                if (halCallNs != 0) record(mKey, STAGE_HAL_CALL, halCallNs - focusNs);
+            }
+            if (succeeded && halCallNs != 0) {
+                record(mKey, STAGE_RESULT, now - halCallNs);
+                record(mKey, STAGE_TOTAL, now - mStartNs);
+            } else {
+                mFailures.incrementAndGet(mKey);
+            }
+
+            int slot = (int) (mRecentCount.getAndIncrement() % RECENT_OPERATIONS);
+            mRecent.set(slot, new Result(mKey, System.currentTimeMillis(),
+                    (now - mStartNs) / 1000, succeeded));
+        }
+    }
+
+    /**
+     * Starts tracking a new operation, as the request is received.
+     *
+     * @param operation One of AudioStreamController.OPERATION_* constants
+     * @param bandId One of ProgramType.ID_* constants, or 0 if not known
+     */
+    @NonNull
+    public Trace startTrace(int operation, int bandId) {
+        if (operation <= 0 || operation >= OPERATION_COUNT) {
+            throw new IllegalArgumentException("Invalid operation: " + operation);
+        }
+        if (bandId < 0 || bandId >= BAND_COUNT) bandId = 0;
+        return new Trace(operation * BAND_COUNT + bandId);
+    }
+
+    private void record(int key, int stage, long ns) {
+        int index = key * STAGE_COUNT + stage;
+        LatencyHistogram histogram = mHistograms.get(index);
+        if (histogram == null) {
+            mHistograms.compareAndSet(index, null, new LatencyHistogram());
+            histogram = mHistograms.get(index);
+        }
+        histogram.record(ns / 1000);
+    }
+
+    /**
+     * Returns the histogram for a given operation, band and stage.
+     *
+     * @return Histogram, or {@code null} if nothing was recorded yet
+     */
+    @Nullable
+    public LatencyHistogram getHistogram(int operation, int bandId, int stage) {
+        return mHistograms.get((operation * BAND_COUNT + bandId) * STAGE_COUNT + stage);
+    }
+
+    /**
+     * Prints recently finished operations, oldest first.
+     */
+    public void dumpRecent(@NonNull PrintWriter pw, @NonNull String prefix) {
+        long count = mRecentCount.get();
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS", Locale.US);
+        for (long i = Math.max(0, count - RECENT_OPERATIONS); i < count; i++) {
+            Result result = mRecent.get((int) (i % RECENT_OPERATIONS));
+            // the slot may be in the middle of being written
+            if (result == null) continue;
+            pw.println(prefix + format.format(new Date(result.finishedAtMs)) + " "
+                    + OPERATION_NAMES[result.key / BAND_COUNT] + " "
+                    + BAND_NAMES[result.key % BAND_COUNT] + ": "
+                    + (result.succeeded ? "succeeded" : "failed") + " in "
+                    + (result.totalUs / 1000) + "ms");
+        }
+    }
+
+    /**
+     * Prints all non-empty histograms.
+     */
+    public void dump(@NonNull PrintWriter pw, @NonNull String prefix) {
+        for (int key = BAND_COUNT; key < OPERATION_COUNT * BAND_COUNT; key++) {
+            long failures = mFailures.get(key);
+            boolean isHeaderPrinted = false;
+            for (int stage = 0; stage < STAGE_COUNT; stage++) {
+                LatencyHistogram histogram = mHistograms.get(key * STAGE_COUNT + stage);
+                if (histogram == null) continue;
+                if (!isHeaderPrinted) {
+                    printHeader(pw, prefix, key, failures);
+                    isHeaderPrinted = true;
+                }
+                pw.println(prefix + "  " + STAGE_NAMES[stage] + ": " + histogram);
+            }
+            if (!isHeaderPrinted && failures > 0) printHeader(pw, prefix, key, failures);
+        }
+    }
+
+    private static void printHeader(@NonNull PrintWriter pw, @NonNull String prefix, int key,
+            long failures) {
+        pw.println(prefix + OPERATION_NAMES[key / BAND_COUNT] + " " + BAND_NAMES[key % BAND_COUNT]
+                + " (failures: " + failures + ")");
+    }
+}
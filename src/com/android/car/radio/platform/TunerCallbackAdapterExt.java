@@ -21,16 +21,18 @@ import android.hardware.radio.RadioManager;
 import android.hardware.radio.RadioMetadata;
 import android.hardware.radio.RadioTuner;
 import android.os.Handler;
-import android.os.Looper;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.car.radio.util.Log;
+import com.android.car.radio.util.RadioTrace;
 import com.android.internal.annotations.GuardedBy;
 
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -40,6 +42,11 @@ import java.util.concurrent.atomic.AtomicReference;
  * on different callback types), it just represents a proposed feature
  * extensions.
  *
+ * Events are dispatched to the wrapped callback on a given handler, with separate queues
+ * per event class: program info, metadata, program list and parameter updates are conflated
+ * (only the latest value is delivered, if the handler falls behind), while errors, tune
+ * failures, control and announcement changes are always delivered in order.
+ *
  * They might eventually get pushed to the framework.
  */
 class TunerCallbackAdapterExt extends RadioTuner.Callback {
@@ -59,6 +66,15 @@ class TunerCallbackAdapterExt extends RadioTuner.Callback {
     @GuardedBy("mProgramInfoLock")
     private RadioManager.ProgramInfo mCachedProgramInfo;
 
+    // conflated events, pending delivery to mCallback
+    private final AtomicReference<RadioManager.ProgramInfo> mPendingProgramInfo =
+            new AtomicReference<>();
+    private final AtomicReference<RadioMetadata> mPendingMetadata = new AtomicReference<>();
+    private final AtomicBoolean mPendingProgramListChange = new AtomicBoolean();
+    private final Object mParametersLock = new Object();
+    @GuardedBy("mParametersLock")
+    private Map<String, String> mPendingParameters;
+
     interface TuneFailedCallback {
         void onTuneFailed(int result, @Nullable ProgramSelector selector);
     }
@@ -67,13 +83,9 @@ class TunerCallbackAdapterExt extends RadioTuner.Callback {
         void onProgramInfoChanged(RadioManager.ProgramInfo info);
     }
 
-    TunerCallbackAdapterExt(@NonNull RadioTuner.Callback callback, @Nullable Handler handler) {
+    TunerCallbackAdapterExt(@NonNull RadioTuner.Callback callback, @NonNull Handler handler) {
         mCallback = Objects.requireNonNull(callback);
-        if (handler == null) {
-            mHandler = new Handler(Looper.getMainLooper());
-        } else {
-            mHandler = handler;
-        }
+        mHandler = Objects.requireNonNull(handler);
     }
 
     public boolean waitForInitialization() {
@@ -110,9 +122,14 @@ class TunerCallbackAdapterExt extends RadioTuner.Callback {
 
     @Override
     public void onTuneFailed(int result, @Nullable ProgramSelector selector) {
-        TuneFailedCallback cb = mTuneFailedCallback.get();
-        if (cb != null) {
-            cb.onTuneFailed(result, selector);
+        RadioTrace.begin("Radio.TunerCallbackAdapterExt.onTuneFailed");
+        try {
+            TuneFailedCallback cb = mTuneFailedCallback.get();
+            if (cb != null) {
+                cb.onTuneFailed(result, selector);
+            }
+        } finally {
+            RadioTrace.end();
         }
         mHandler.post(() -> mCallback.onTuneFailed(result, selector));
     }
@@ -128,23 +145,39 @@ class TunerCallbackAdapterExt extends RadioTuner.Callback {
     }
 
     public void onProgramInfoChanged(RadioManager.ProgramInfo info) {
-        synchronized (mProgramInfoLock) {
-            if (mProgramInfoCallback == null) {
-                // Cache the ProgramInfo until the callback is set. This workaround is needed
-                // because a TunerCallbackAdapterExt needed to call RadioManager.openTuner(), but
-                // the return of that function is needed to create a RadioManagerExt, which calls
-                // sets the callback through setProgramInfoCallback().
-                Log.d(TAG, "ProgramInfo callback is not set yet; caching ProgramInfo");
-                mCachedProgramInfo = info;
-            } else {
-                mProgramInfoCallback.onProgramInfoChanged(info);
+        RadioTrace.begin("Radio.TunerCallbackAdapterExt.onProgramInfoChanged");
+        try {
+            synchronized (mProgramInfoLock) {
+                if (mProgramInfoCallback == null) {
+                    // Cache the ProgramInfo until the callback is set. This workaround is needed
+                    // because a TunerCallbackAdapterExt needed to call RadioManager.openTuner(),
+                    // but the return of that function is needed to create a RadioManagerExt,
+                    // which calls sets the callback through setProgramInfoCallback().
+                    Log.d(TAG, "ProgramInfo callback is not set yet; caching ProgramInfo");
+                    mCachedProgramInfo = info;
+                } else {
+                    mProgramInfoCallback.onProgramInfoChanged(info);
+                }
             }
+        } finally {
+            RadioTrace.end();
+        }
+        if (mPendingProgramInfo.getAndSet(info) != null) return;
+        mHandler.post(this::dispatchProgramInfo);
+    }
+
+    private void dispatchProgramInfo() {
+        RadioTrace.begin("Radio.TunerCallbackAdapterExt.dispatchProgramInfo");
+        try {
+            mCallback.onProgramInfoChanged(mPendingProgramInfo.getAndSet(null));
+        } finally {
+            RadioTrace.end();
         }
-        mHandler.post(() -> mCallback.onProgramInfoChanged(info));
     }
 
     public void onMetadataChanged(RadioMetadata metadata) {
-        mHandler.post(() -> mCallback.onMetadataChanged(metadata));
+        if (mPendingMetadata.getAndSet(metadata) != null) return;
+        mHandler.post(() -> mCallback.onMetadataChanged(mPendingMetadata.getAndSet(null)));
     }
 
     public void onTrafficAnnouncement(boolean active) {
@@ -172,10 +205,29 @@ class TunerCallbackAdapterExt extends RadioTuner.Callback {
     }
 
     public void onProgramListChanged() {
-        mHandler.post(() -> mCallback.onProgramListChanged());
+        if (mPendingProgramListChange.getAndSet(true)) return;
+        mHandler.post(() -> {
+            mPendingProgramListChange.set(false);
+            mCallback.onProgramListChanged();
+        });
     }
 
     public void onParametersUpdated(@NonNull Map<String, String> parameters) {
-        mHandler.post(() -> mCallback.onParametersUpdated(parameters));
+        synchronized (mParametersLock) {
+            if (mPendingParameters != null) {
+                // newer values override the older ones, but the keys are merged
+                mPendingParameters.putAll(parameters);
+                return;
+            }
+            mPendingParameters = new HashMap<>(parameters);
+        }
+        mHandler.post(() -> {
+            Map<String, String> pending;
+            synchronized (mParametersLock) {
+                pending = mPendingParameters;
+                mPendingParameters = null;
+            }
+            mCallback.onParametersUpdated(pending);
+        });
     }
 }
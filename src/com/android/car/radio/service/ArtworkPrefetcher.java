@@ -0,0 +1,202 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.service;
+
+import android.hardware.radio.ProgramList;
+import android.hardware.radio.RadioManager.ProgramInfo;
+import android.hardware.radio.RadioMetadata;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.broadcastradio.support.platform.ProgramInfoExt;
+import com.android.car.broadcastradio.support.platform.RadioMetadataExt;
+import com.android.car.radio.platform.ImageMemoryCache;
+import com.android.car.radio.platform.RadioManagerExt;
+import com.android.car.radio.platform.RadioTunerExt;
+import com.android.car.radio.storage.FavoritesSnapshot;
+import com.android.car.radio.util.Log;
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Warms up {@link ImageMemoryCache} with station icons in the background.
+ *
+ * Icons of favorite stations are fetched first, followed by the rest of the program list.
+ * Icons are prefetched in the sizes their consumers request: list thumbnails for all stations,
+ * and session art for favorites only, since these are the likely next programs and the variant
+ * tier can't hold session art of a whole program list.
+ *
+ * Images are fetched one at a time on a low priority thread, and prefetching is paused while
+ * a tune operation is in progress or waiting in the {@link TuneCommandQueue}, so it doesn't
+ * compete with user actions.
+ */
+class ArtworkPrefetcher {
+    private static final String TAG = "BcRadioApp.prefetch";
+    private static final long TUNE_PENDING_RETRY_MS = 500;
+
+    private final Object mLock = new Object();
+    private final ImageMemoryCache mImageCache;
+    private final RadioManagerExt mRadioManager;
+    private final @RadioManagerExt.ModuleRole int mProgramListRole;
+    private final RadioTunerExt mRadioTuner;
+    private final TuneCommandQueue mTuneQueue;
+    @Nullable private final ProgramList mProgramList;
+
+    private final HandlerThread mHandlerThread =
+            new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+    private final Handler mHandler;
+    private final Runnable mFetchNext = this::fetchNext;
+
+    @GuardedBy("mLock")
+    private FavoritesSnapshot mFavorites = FavoritesSnapshot.EMPTY;
+    @GuardedBy("mLock")
+    private final Deque<Request> mQueue = new ArrayDeque<>();
+    @GuardedBy("mLock")
+    private boolean mIsFetching;
+    @GuardedBy("mLock")
+    private boolean mIsClosed;
+
+    /**
+     * @param programListRole Role of the module providing the program list
+     * @param tuner Foreground tuner, whose tune operations pause prefetching
+     * @param tuneQueue Queue of the foreground tuner, whose waiting requests pause prefetching
+     */
+    ArtworkPrefetcher(@NonNull ImageMemoryCache imageCache, @NonNull RadioManagerExt radioManager,
+            @RadioManagerExt.ModuleRole int programListRole, @NonNull RadioTunerExt tuner,
+            @NonNull TuneCommandQueue tuneQueue, @Nullable ProgramList programList) {
+        mImageCache = Objects.requireNonNull(imageCache);
+        mRadioManager = Objects.requireNonNull(radioManager);
+        mProgramListRole = programListRole;
+        mRadioTuner = Objects.requireNonNull(tuner);
+        mTuneQueue = Objects.requireNonNull(tuneQueue);
+        mProgramList = programList;
+
+        mHandlerThread.start();
+        mHandler = new Handler(mHandlerThread.getLooper());
+    }
+
+    private static final class Request {
+        public final long globalId;
+        @ImageMemoryCache.ImageSize
+        public final int size;
+
+        Request(long globalId, @ImageMemoryCache.ImageSize int size) {
+            this.globalId = globalId;
+            this.size = size;
+        }
+    }
+
+    /**
+     * Updates the favorites list, which takes precedence when prefetching.
+     */
+    void setFavorites(@NonNull FavoritesSnapshot favorites) {
+        synchronized (mLock) {
+            mFavorites = Objects.requireNonNull(favorites);
+        }
+        onProgramListChanged();
+    }
+
+    /**
+     * Notifies about program list changes, so that new stations get prefetched.
+     */
+    void onProgramListChanged() {
+        mHandler.post(this::replan);
+    }
+
+    private long getIconId(@NonNull ProgramInfo info) {
+        return mRadioManager.getModuleImageId(mProgramListRole, RadioMetadataExt.getGlobalBitmapId(
+                ProgramInfoExt.getMetadata(info), RadioMetadata.METADATA_KEY_ICON));
+    }
+
+    private void replan() {
+        if (mProgramList == null) return;
+        List<ProgramInfo> programs = mProgramList.toList();
+
+        synchronized (mLock) {
+            if (mIsClosed) return;
+            Set<Long> favoriteIcons = new LinkedHashSet<>();
+            Set<Long> otherIcons = new LinkedHashSet<>();
+            for (ProgramInfo info : programs) {
+                long iconId = getIconId(info);
+                if (iconId == 0) continue;
+                if (mFavorites.contains(info.getSelector())) {
+                    favoriteIcons.add(iconId);
+                } else {
+                    otherIcons.add(iconId);
+                }
+            }
+            otherIcons.removeAll(favoriteIcons);
+
+            mQueue.clear();
+            for (long iconId : favoriteIcons) {
+                mQueue.add(new Request(iconId, ImageMemoryCache.SIZE_THUMBNAIL));
+                mQueue.add(new Request(iconId, ImageMemoryCache.SIZE_SESSION_ART));
+            }
+            for (long iconId : otherIcons) {
+                mQueue.add(new Request(iconId, ImageMemoryCache.SIZE_THUMBNAIL));
+            }
+        }
+        fetchNext();
+    }
+
+    private void fetchNext() {
+        synchronized (mLock) {
+            if (mIsClosed || mIsFetching) return;
+            if (mRadioTuner.isTunePending() || mTuneQueue.isBusy()) {
+                mHandler.removeCallbacks(mFetchNext);
+                mHandler.postDelayed(mFetchNext, TUNE_PENDING_RETRY_MS);
+                return;
+            }
+
+            while (!mQueue.isEmpty()) {
+                Request request = mQueue.poll();
+                if (mImageCache.isCached(request.globalId, request.size)) continue;
+
+                mIsFetching = true;
+                mImageCache.prefetchAsync(request.globalId, request.size).whenComplete((bm, e) -> {
+                    synchronized (mLock) {
+                        mIsFetching = false;
+                    }
+                    mHandler.post(mFetchNext);
+                });
+                return;
+            }
+        }
+        Log.d(TAG, "Artwork prefetching done");
+    }
+
+    /**
+     * Stops prefetching.
+     */
+    void close() {
+        synchronized (mLock) {
+            mIsClosed = true;
+            mQueue.clear();
+        }
+        mHandlerThread.quitSafely();
+    }
+}
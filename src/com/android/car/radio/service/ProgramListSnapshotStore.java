@@ -0,0 +1,246 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.service;
+
+import android.hardware.radio.ProgramSelector;
+import android.hardware.radio.RadioManager.BandDescriptor;
+import android.hardware.radio.RadioManager.ProgramInfo;
+import android.hardware.radio.RadioMetadata;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.broadcastradio.support.platform.ProgramInfoExt;
+import com.android.car.radio.bands.ProgramType;
+import com.android.car.radio.bands.RegionConfig;
+import com.android.car.radio.storage.ProgramSelectorConverter;
+import com.android.car.radio.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persists the last complete program list, one file per band.
+ *
+ * The snapshot is served as a stale list on startup, until the tuner finishes populating its
+ * live program list, so only the fields needed to list and tune to a program are stored: its
+ * selector (see {@link ProgramSelectorConverter}) and name. Metadata images are not stored,
+ * since their IDs are not stable across tuner sessions.
+ *
+ * Snapshot files are written with an explicit format: version, region key, number of programs,
+ * and for each program its selector (length and bytes) and name. AM/FM snapshots are tied to
+ * the region config they were taken with. Snapshots of a different format version or region
+ * config are discarded.
+ */
+class ProgramListSnapshotStore {
+    private static final String TAG = "BcRadioApp.snapshot";
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_FIELD_BYTES = 64 * 1024;
+    private static final String FILE_PREFIX = "program_list_";
+    private static final String FILE_SUFFIX = ".bin";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final ProgramType[] BANDS = {ProgramType.AM, ProgramType.FM, ProgramType.DAB};
+
+    private final File mDir;
+    private final byte[] mRegionKey;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    ProgramListSnapshotStore(@NonNull File dir, @NonNull RegionConfig regionConfig) {
+        mDir = Objects.requireNonNull(dir);
+        mRegionKey = marshallRegionConfig(Objects.requireNonNull(regionConfig));
+    }
+
+    private static byte[] marshallRegionConfig(@NonNull RegionConfig config) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writeBands(out, config.getAmConfig());
+            writeBands(out, config.getFmConfig());
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't write to memory", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeBands(@NonNull DataOutputStream out,
+            @NonNull List<BandDescriptor> bands) throws IOException {
+        out.writeInt(bands.size());
+        for (BandDescriptor band : bands) {
+            out.writeInt(band.getRegion());
+            out.writeInt(band.getType());
+            out.writeInt(band.getLowerLimit());
+            out.writeInt(band.getUpperLimit());
+            out.writeInt(band.getSpacing());
+        }
+    }
+
+    private File getFile(@NonNull ProgramType band) {
+        return new File(mDir, FILE_PREFIX + band.id + FILE_SUFFIX);
+    }
+
+    private static boolean isRegionDependent(@NonNull ProgramType band) {
+        return band == ProgramType.AM || band == ProgramType.FM;
+    }
+
+    /**
+     * Loads snapshots of all bands asynchronously.
+     *
+     * @return Future with the stale program list, empty if there is no valid snapshot
+     */
+    @NonNull
+    CompletableFuture<List<ProgramInfo>> load() {
+        return CompletableFuture.supplyAsync(() -> {
+            List<ProgramInfo> programs = new ArrayList<>();
+            for (ProgramType band : BANDS) {
+                List<ProgramInfo> bandPrograms = loadBand(band);
+                if (bandPrograms != null) programs.addAll(bandPrograms);
+            }
+            return programs;
+        }, mExecutor);
+    }
+
+    @Nullable
+    private List<ProgramInfo> loadBand(@NonNull ProgramType band) {
+        File file = getFile(band);
+        if (!file.exists()) return null;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                Log.i(TAG, "Discarding program list snapshot of a different format: " + band);
+                file.delete();
+                return null;
+            }
+            byte[] regionKey = readBytes(in, MAX_FIELD_BYTES);
+            if (isRegionDependent(band) && !Arrays.equals(regionKey, mRegionKey)) {
+                Log.i(TAG, "Discarding program list snapshot for a different region: " + band);
+                file.delete();
+                return null;
+            }
+
+            int count = in.readInt();
+            if (count < 0) throw new IOException("Invalid program count " + count);
+            List<ProgramInfo> programs = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                ProgramSelector sel = ProgramSelectorConverter.toSelector(
+                        readBytes(in, MAX_FIELD_BYTES));
+                programs.add(createProgramInfo(sel, in.readUTF()));
+            }
+            if (in.read() != -1) throw new IOException("Trailing snapshot data");
+            return programs;
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Removing unreadable program list snapshot " + file, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /* Reads a length-prefixed byte array, not longer than a given limit. */
+    private static byte[] readBytes(@NonNull DataInputStream in, int maxLength)
+            throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > maxLength) throw new IOException("Invalid length " + length);
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeBytes(@NonNull DataOutputStream out, @NonNull byte[] bytes)
+            throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static @NonNull ProgramInfo createProgramInfo(@NonNull ProgramSelector sel,
+            @NonNull String name) {
+        RadioMetadata.Builder meta = new RadioMetadata.Builder();
+        if (!name.isEmpty()) meta.putString(RadioMetadata.METADATA_KEY_PROGRAM_NAME, name);
+        return new ProgramInfo(sel, sel.getPrimaryId(), sel.getPrimaryId(), null, 0, 0,
+                meta.build(), null);
+    }
+
+    /**
+     * Stores a complete program list asynchronously, replacing previous snapshots.
+     */
+    void save(@NonNull List<ProgramInfo> programs) {
+        List<ProgramInfo> copy = new ArrayList<>(programs);
+        mExecutor.execute(() -> {
+            if (!mDir.isDirectory() && !mDir.mkdirs()) {
+                Log.e(TAG, "Couldn't create snapshot directory " + mDir);
+                return;
+            }
+            for (ProgramType band : BANDS) {
+                List<ProgramInfo> bandPrograms = new ArrayList<>();
+                for (ProgramInfo info : copy) {
+                    if (ProgramType.fromSelector(info.getSelector()) == band) {
+                        bandPrograms.add(info);
+                    }
+                }
+                saveBand(band, bandPrograms);
+            }
+        });
+    }
+
+    private void saveBand(@NonNull ProgramType band, @NonNull List<ProgramInfo> programs) {
+        File file = getFile(band);
+        if (programs.isEmpty()) {
+            file.delete();
+            return;
+        }
+
+        File tmpFile = new File(mDir, file.getName() + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+            out.writeInt(FORMAT_VERSION);
+            writeBytes(out, isRegionDependent(band) ? mRegionKey : new byte[0]);
+            out.writeInt(programs.size());
+            for (ProgramInfo info : programs) {
+                writeBytes(out, ProgramSelectorConverter.toBlob(info.getSelector()));
+                out.writeUTF(ProgramInfoExt.getProgramName(info,
+                        ProgramInfoExt.NAME_NO_CHANNEL_FALLBACK));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Couldn't write program list snapshot " + tmpFile, e);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            Log.e(TAG, "Couldn't rename program list snapshot " + tmpFile);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Stops the background thread. Pending writes are still completed.
+     */
+    void close() {
+        mExecutor.shutdown();
+    }
+}
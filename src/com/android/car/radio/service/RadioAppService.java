@@ -21,23 +21,32 @@ import static com.android.car.radio.util.Remote.tryExec;
 import android.content.Intent;
 import android.hardware.radio.ProgramList;
 import android.hardware.radio.ProgramSelector;
+import android.hardware.radio.RadioManager.BandDescriptor;
 import android.hardware.radio.RadioManager.ProgramInfo;
 import android.hardware.radio.RadioTuner;
 import android.media.browse.MediaBrowser.MediaItem;
 import android.media.session.PlaybackState;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.RemoteCallbackList;
 import android.os.RemoteException;
 import android.os.SystemClock;
 import android.service.media.MediaBrowserService;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.LifecycleRegistry;
 
 import com.android.car.broadcastradio.support.media.BrowseTree;
+import com.android.car.broadcastradio.support.platform.ImageResolver;
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.car.radio.R;
 import com.android.car.radio.audio.AudioStreamController;
 import com.android.car.radio.bands.ProgramType;
 import com.android.car.radio.bands.RegionConfig;
@@ -46,87 +55,382 @@ import com.android.car.radio.platform.ImageMemoryCache;
 import com.android.car.radio.platform.RadioManagerExt;
 import com.android.car.radio.platform.RadioTunerExt;
 import com.android.car.radio.platform.RadioTunerExt.TuneCallback;
+import com.android.car.radio.platform.TuneLatencyTracker;
+import com.android.car.radio.storage.FavoritesSnapshot;
 import com.android.car.radio.storage.RadioStorage;
+import com.android.car.radio.util.CoalescingScheduler;
 import com.android.car.radio.util.Log;
+import com.android.car.radio.util.RadioTrace;
+import com.android.car.radio.util.StageTimer;
+import com.android.internal.annotations.GuardedBy;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A service handling hardware tuner session and audio streaming.
+ *
+ * The service state is split into independently guarded parts, so that a slow client can't
+ * block incoming tune requests:
+ *  - observable state (current program, playback state) is an immutable snapshot;
+ *  - tune, seek, step and band switch operations are serialized with {@link #mTuneLock};
+ *  - pending program list changes are guarded by {@link #mProgramListLock};
+ *  - {@link IRadioAppCallback} calls are made without holding any lock, from a single
+ *    callback thread, so that clients get the updates in order. Clients are called one after
+ *    another, so a stuck client (an in-process one, or a remote one with a full oneway queue)
+ *    delays the updates of the others, but never tune operations or their results; dead
+ *    clients are unregistered automatically.
+ *
+ * The tuner session is opened on a background thread, so that the service can be bound
+ * immediately. Commands received before the session is ready are queued and executed in order
+ * once it is; clients are notified with {@link IRadioAppCallback#onStartupFinished}.
  */
 public class RadioAppService extends MediaBrowserService implements LifecycleOwner {
     private static final String TAG = "BcRadioApp.service";
 
     public static String ACTION_APP_SERVICE = "com.android.car.radio.ACTION_APP_SERVICE";
-    private static final long PROGRAM_LIST_RATE_LIMITING = 1000;
-
-    private final Object mLock = new Object();
+    private static final long IMAGE_CACHE_MEMORY_BYTES = 8 * 1024 * 1024;
+    private static final long IMAGE_CACHE_DISK_BYTES = 16 * 1024 * 1024;
+    private static final long IMAGE_CACHE_NEGATIVE_TTL_MS = 60 * 1000;
+    private static final int IMAGE_CACHE_NEGATIVE_MAX_ENTRIES = 256;
+    private static final long SLOW_CALLBACK_THRESHOLD_NS = 50 * 1000 * 1000;  // 50ms
+
+    private static final int STARTUP_PENDING = 0;
+    private static final int STARTUP_READY = 1;
+    private static final int STARTUP_FAILED = 2;
+
+    private final Object mTuneLock = new Object();
+    private final Object mProgramListLock = new Object();
+    private final Object mRegionConfigLock = new Object();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final HandlerThread mCallbackThread = new HandlerThread("BcRadioApp.callbacks");
+    private Handler mCallbackHandler;
     private final LifecycleRegistry mLifecycleRegistry = new LifecycleRegistry(this);
-    private final List<IRadioAppCallback> mRadioAppCallbacks = new ArrayList<>();
+    // broadcasts are done on mCallbackThread only
+    private final RemoteCallbackList<IRadioAppCallback> mRadioAppCallbacks =
+            new RemoteCallbackList<IRadioAppCallback>() {
+        @Override
+        public void onCallbackDied(IRadioAppCallback callback, Object cookie) {
+            Log.i(TAG, "IRadioAppCallback client died, unregistered");
+        }
+    };
     private RadioAppServiceWrapper mWrapper;
 
     private RadioManagerExt mRadioManager;
-    @Nullable private RadioTunerExt mRadioTuner;
-    @Nullable private ProgramList mProgramList;
+    // written under mTuneLock; volatile, so that callers may check or copy it without the lock,
+    // while tuner operations are still serialized with mTuneLock
+    @Nullable private volatile RadioTunerExt mRadioTuner;
+    @Nullable private volatile ProgramList mProgramList;
+    // tuner of the background scanning module, if there is one
+    @Nullable private volatile RadioTunerExt mScanTuner;
 
     private RadioStorage mRadioStorage;
     private ImageMemoryCache mImageCache;
+    // role of the module providing the program list and its artwork
+    private volatile @RadioManagerExt.ModuleRole int mProgramListRole =
+            RadioManagerExt.ROLE_FOREGROUND;
+    @GuardedBy("mTuneLock")
     @Nullable private AudioStreamController mAudioStreamController;
 
     private BrowseTree mBrowseTree;
     private TunerSession mMediaSession;
+    private CoalescingScheduler mProgramListScheduler;
+    private TuneCommandQueue mTuneQueue;
+    @Nullable private ProgramListSnapshotStore mSnapshotStore;
+    @Nullable private volatile ArtworkPrefetcher mArtworkPrefetcher;
 
     // current observables state for newly bound IRadioAppCallbacks
-    private ProgramInfo mCurrentProgram = null;
-    private int mCurrentPlaybackState = PlaybackState.STATE_NONE;
-    private long mLastProgramListPush;
-
+    private final AtomicReference<ServiceState> mState = new AtomicReference<>(
+            new ServiceState(null, PlaybackState.STATE_NONE));
+
+    // program list changes not yet pushed to IRadioAppCallbacks
+    @GuardedBy("mProgramListLock")
+    private final Set<ProgramSelector.Identifier> mPendingModified = new HashSet<>();
+    @GuardedBy("mProgramListLock")
+    private final Set<ProgramSelector.Identifier> mPendingRemoved = new HashSet<>();
+    @GuardedBy("mProgramListLock")
+    private boolean mProgramListComplete;
+    // programs restored from the last snapshot and not (yet) on the live list
+    @GuardedBy("mProgramListLock")
+    @Nullable private Map<ProgramSelector.Identifier, ProgramInfo> mStaleProgramList;
+
+    @GuardedBy("mRegionConfigLock")
     private RegionConfig mRegionConfigCache;
 
+    @GuardedBy("mTuneLock")
+    private volatile int mStartupState = STARTUP_PENDING;
+    // commands received before the tuner session got ready
+    @GuardedBy("mTuneLock")
+    private final List<PendingCommand> mPendingCommands = new ArrayList<>();
+    @GuardedBy("mTuneLock")
+    private boolean mPendingTuneRequested;
+    @GuardedBy("mTuneLock")
+    private boolean mIsDestroyed;
+    private final StageTimer mStartupTimer = new StageTimer("RadioAppService startup");
+    private final TuneLatencyTracker mLatencyTracker = new TuneLatencyTracker();
+
+    /**
+     * Immutable snapshot of the observable service state.
+     */
+    private static final class ServiceState {
+        @Nullable public final ProgramInfo currentProgram;
+        public final int playbackState;
+
+        ServiceState(@Nullable ProgramInfo currentProgram, int playbackState) {
+            this.currentProgram = currentProgram;
+            this.playbackState = playbackState;
+        }
+
+        ServiceState withCurrentProgram(@NonNull ProgramInfo info) {
+            return new ServiceState(info, playbackState);
+        }
+
+        ServiceState withPlaybackState(int state) {
+            return new ServiceState(currentProgram, state);
+        }
+    }
+
+    /**
+     * Fan-out timing of a single {@link IRadioAppCallback} client.
+     */
+    private static final class ClientStats {
+        private long mCallCount;
+        private long mTotalNs;
+        private long mMaxNs;
+
+        synchronized void record(long durationNs) {
+            mCallCount++;
+            mTotalNs += durationNs;
+            mMaxNs = Math.max(mMaxNs, durationNs);
+        }
+
+        @Override
+        public synchronized String toString() {
+            long avgNs = mCallCount == 0 ? 0 : mTotalNs / mCallCount;
+            return "calls=" + mCallCount + ", avg=" + (avgNs / 1000) + "us, max="
+                    + (mMaxNs / 1000) + "us";
+        }
+    }
+
+    /**
+     * Command received before the tuner session got ready.
+     */
+    private static final class PendingCommand {
+        @NonNull public final Runnable command;
+        // tuning requests are reported as failed if the command is dropped
+        @Nullable public final ITuneCallback callback;
+
+        PendingCommand(@NonNull Runnable command, @Nullable ITuneCallback callback) {
+            this.command = Objects.requireNonNull(command);
+            this.callback = callback;
+        }
+    }
+
+    private interface CallbackOperation {
+        void execute(@NonNull IRadioAppCallback callback) throws RemoteException;
+    }
+
     @Override
     public void onCreate() {
         super.onCreate();
 
         Log.i(TAG, "Starting RadioAppService...");
 
+        mCallbackThread.start();
+        mCallbackHandler = new Handler(mCallbackThread.getLooper());
+
         mWrapper = new RadioAppServiceWrapper(mBinder);
-        mRadioManager = new RadioManagerExt(this);
+        mRadioManager = createRadioManager();
         mRadioStorage = RadioStorage.getInstance(this);
-        mImageCache = new ImageMemoryCache(mRadioManager, 1000);
-        mRadioTuner = mRadioManager.openSession(mHardwareCallback, null);
-        if (mRadioTuner == null) {
-            Log.e(TAG, "Couldn't open tuner session");
+        mImageCache = new ImageMemoryCache(this, mRadioManager,
+                IMAGE_CACHE_MEMORY_BYTES, IMAGE_CACHE_DISK_BYTES,
+                IMAGE_CACHE_NEGATIVE_TTL_MS, IMAGE_CACHE_NEGATIVE_MAX_ENTRIES);
+        mProgramListScheduler = new CoalescingScheduler(mHandler,
+                getResources().getInteger(R.integer.program_list_coalescing_window_ms),
+                getResources().getInteger(R.integer.program_list_max_latency_ms),
+                this::pushProgramListUpdate);
+        mTuneQueue = new TuneCommandQueue(mHandler, mTuneExecutor,
+                getResources().getInteger(R.integer.tune_coalescing_window_ms),
+                getResources().getInteger(R.integer.tune_max_latency_ms));
+
+        ImageResolver thumbnails = mImageCache.getResolver(ImageMemoryCache.SIZE_THUMBNAIL);
+        mBrowseTree = new BrowseTree(this, globalId -> thumbnails.resolve(
+                mRadioManager.getModuleImageId(mProgramListRole, globalId)));
+        mMediaSession = new TunerSession(this, mBrowseTree, mWrapper, mImageCache);
+        setSessionToken(mMediaSession.getSessionToken());
+        mRadioStorage.getFavorites().observe(this,
+                favs -> mBrowseTree.setFavorites(favs.getProgramSet()));
+        mStartupTimer.mark("create");
+
+        new Thread(this::openTunerSession, "BcRadioApp.startup").start();
+
+        mLifecycleRegistry.markState(Lifecycle.State.CREATED);
+    }
+
+    /* Overridden by benchmarks, to run the service against a fake tuner. */
+    @VisibleForTesting
+    @NonNull
+    RadioManagerExt createRadioManager() {
+        return new RadioManagerExt(this);
+    }
+
+    /* Runs on the startup thread: module listing, tuner opening and initialization may block
+     * for several seconds. */
+    private void openTunerSession() {
+        // mHardwareCallback is called on a background thread, UI consumers hop to the main
+        // thread through RadioAppServiceWrapper's LiveData.
+        RadioTunerExt tuner = mRadioManager.openSession(mHardwareCallback, null);
+        mStartupTimer.mark("openSession");
+
+        // a second module refreshes the program list without retuning the audible one
+        RadioTunerExt scanTuner = null;
+        if (tuner != null && mRadioManager.hasBackgroundScanModule()) {
+            scanTuner = mRadioManager.openSession(RadioManagerExt.ROLE_BACKGROUND_SCAN,
+                    mScanCallback, null);
+            if (scanTuner == null) Log.w(TAG, "Couldn't open background scanning session");
+            mStartupTimer.mark("openScanSession");
+        }
+
+        RadioTunerExt finalScanTuner = scanTuner;
+        mHandler.post(() -> onTunerSessionOpened(tuner, finalScanTuner));
+    }
+
+    private void onTunerSessionOpened(@Nullable RadioTunerExt tuner,
+            @Nullable RadioTunerExt scanTuner) {
+        synchronized (mTuneLock) {
+            if (mIsDestroyed) {
+                if (tuner != null) tuner.close();
+                if (scanTuner != null) scanTuner.close();
+                return;
+            }
+            mScanTuner = scanTuner;
+            if (scanTuner != null) mProgramListRole = RadioManagerExt.ROLE_BACKGROUND_SCAN;
+            if (tuner == null) {
+                Log.e(TAG, "Couldn't open tuner session");
+                mStartupState = STARTUP_FAILED;
+            } else {
+                mRadioTuner = tuner;
+                mAudioStreamController = new AudioStreamController(this, tuner,
+                        this::onPlaybackStateChanged);
+            }
+        }
+        if (tuner == null) {
+            dropPendingCommands();
+            notifyCallbacks(callback -> callback.onStartupFinished(false));
             return;
         }
 
-        mAudioStreamController = new AudioStreamController(this, mRadioTuner,
-                this::onPlaybackStateChanged);
-        mBrowseTree = new BrowseTree(this, mImageCache);
-        mMediaSession = new TunerSession(this, mBrowseTree, mWrapper, mImageCache);
-        setSessionToken(mMediaSession.getSessionToken());
         mBrowseTree.setAmFmRegionConfig(mRadioManager.getAmFmRegionConfig());
-        mRadioStorage.getFavorites().observe(this,
-                favs -> mBrowseTree.setFavorites(new HashSet<>(favs)));
 
-        mProgramList = mRadioTuner.getDynamicProgramList(null);
-        if (mProgramList != null) {
-            mBrowseTree.setProgramList(mProgramList);
-            mProgramList.registerListCallback(new ProgramList.ListCallback() {
+        ProgramList programList = (scanTuner != null ? scanTuner : tuner)
+                .getDynamicProgramList(null);
+        mProgramList = programList;
+        if (programList != null) {
+            mBrowseTree.setProgramList(programList);
+            programList.registerListCallback(new ProgramList.ListCallback() {
                 @Override
                 public void onItemChanged(@NonNull ProgramSelector.Identifier id) {
-                    onProgramListChanged();
+                    synchronized (mProgramListLock) {
+                        mPendingRemoved.remove(id);
+                        mPendingModified.add(id);
+                    }
+                    mProgramListScheduler.schedule();
+                }
+
+                @Override
+                public void onItemRemoved(@NonNull ProgramSelector.Identifier id) {
+                    synchronized (mProgramListLock) {
+                        mPendingModified.remove(id);
+                        mPendingRemoved.add(id);
+                    }
+                    mProgramListScheduler.schedule();
                 }
             });
-            mProgramList.addOnCompleteListener(this::pushProgramListUpdate);
+            programList.addOnCompleteListener(this::onProgramListComplete);
+
+            mSnapshotStore = new ProgramListSnapshotStore(
+                    new File(getNoBackupFilesDir(), "program_lists"), mWrapper.getRegionConfig());
+            mSnapshotStore.load().thenAccept(this::onProgramListSnapshotLoaded);
         }
 
-        tuneToDefault(null);
-        mAudioStreamController.requestMuted(false);
+        ArtworkPrefetcher prefetcher = new ArtworkPrefetcher(mImageCache, mRadioManager,
+                mProgramListRole, tuner, mTuneQueue, programList);
+        mArtworkPrefetcher = prefetcher;
+        mRadioStorage.getFavorites().observe(this, prefetcher::setFavorites);
+        mStartupTimer.mark("setup");
+
+        // queued commands are executed under the lock, so that new ones don't overtake them
+        synchronized (mTuneLock) {
+            mStartupState = STARTUP_READY;
+            // explicit tune request from a client takes precedence over the default program
+            if (!mPendingTuneRequested) mTuneQueue.tuneToDefault(null, succeeded -> {});
+            if (mAudioStreamController != null) mAudioStreamController.requestMuted(false);
+            for (PendingCommand pending : mPendingCommands) {
+                try {
+                    pending.command.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Queued command failed", e);
+                }
+            }
+            mPendingCommands.clear();
+        }
+        mStartupTimer.mark("tune");
+        Log.i(TAG, mStartupTimer.toString());
 
-        mLifecycleRegistry.markState(Lifecycle.State.CREATED);
+        notifyCallbacks(callback -> callback.onStartupFinished(true));
+    }
+
+    /**
+     * Queues a command until the tuner session is ready.
+     *
+     * @param command Command to queue
+     * @param isTune Whether the command selects a program
+     * @return {@code true} if the command was queued, {@code false} if it should be executed now
+     */
+    private boolean deferUntilReady(@NonNull Runnable command, boolean isTune) {
+        return deferUntilReady(new PendingCommand(command, null), isTune);
+    }
+
+    /**
+     * Queues a tuning command until the tuner session is ready.
+     *
+     * If the session fails to open, the callback is notified about the failure.
+     *
+     * @return {@code true} if the command was queued, {@code false} if it should be executed now
+     */
+    private boolean deferUntilReady(@NonNull Runnable command, @NonNull ITuneCallback callback) {
+        return deferUntilReady(new PendingCommand(command, callback), true);
+    }
+
+    private boolean deferUntilReady(@NonNull PendingCommand command, boolean isTune) {
+        synchronized (mTuneLock) {
+            if (mStartupState != STARTUP_PENDING) return false;
+            mPendingCommands.add(command);
+            if (isTune) mPendingTuneRequested = true;
+            return true;
+        }
+    }
+
+    /* Drops queued commands, failing the tuning ones. */
+    private void dropPendingCommands() {
+        List<PendingCommand> dropped;
+        synchronized (mTuneLock) {
+            dropped = new ArrayList<>(mPendingCommands);
+            mPendingCommands.clear();
+        }
+        for (PendingCommand pending : dropped) {
+            if (pending.callback != null) tryExec(() -> pending.callback.onFinished(false));
+        }
     }
 
     @Override
@@ -145,7 +449,7 @@ public class RadioAppService extends MediaBrowserService implements LifecycleOwn
     @Override
     public IBinder onBind(Intent intent) {
         mLifecycleRegistry.markState(Lifecycle.State.STARTED);
-        if (mRadioTuner == null) return null;
+        if (mStartupState == STARTUP_FAILED) return null;
         if (ACTION_APP_SERVICE.equals(intent.getAction())) {
             return mBinder;
         }
@@ -166,78 +470,258 @@ public class RadioAppService extends MediaBrowserService implements LifecycleOwn
 
         if (mMediaSession != null) mMediaSession.release();
         close();
+        if (mImageCache != null) mImageCache.close();
+        if (mSnapshotStore != null) mSnapshotStore.close();
+        if (mRadioStorage != null) mRadioStorage.flushRecentlySelected();
+        mCallbackHandler.post(mRadioAppCallbacks::kill);
+        mCallbackThread.quitSafely();
 
         super.onDestroy();
     }
 
+    /* Doesn't take mTuneLock, so that it works even if the tuner session got stuck. */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("RadioAppService");
+        pw.println("  startup: " + getStartupStateName(mStartupState) + ", " + mStartupTimer);
+
+        ServiceState state = mState.get();
+        pw.println("  current program: " + state.currentProgram);
+        pw.println("  playback state: " + state.playbackState);
+
+        RadioTunerExt tuner = mRadioTuner;
+        pw.println("  tuner session: " + (tuner == null ? "closed"
+                : (tuner.isTunePending() ? "operation pending" : "idle"))
+                + (mScanTuner != null ? ", background scan session open" : ""));
+        if (mTuneQueue != null) {
+            pw.println("  tune queue:");
+            mTuneQueue.dump(pw, "    ");
+        }
+
+        int clientCount = mRadioAppCallbacks.getRegisteredCallbackCount();
+        pw.println("  callback clients: " + clientCount);
+        try {
+            for (int i = 0; i < clientCount; i++) {
+                pw.println("    #" + i + ": " + mRadioAppCallbacks.getRegisteredCallbackCookie(i));
+            }
+        } catch (IndexOutOfBoundsException e) {
+            pw.println("    (client list changed during dump)");
+        }
+
+        ProgramList programList = mProgramList;
+        pw.print("  program list: ");
+        if (programList == null) {
+            pw.println("not available");
+        } else {
+            int staleCount;
+            boolean complete;
+            synchronized (mProgramListLock) {
+                staleCount = (mStaleProgramList == null) ? 0 : mStaleProgramList.size();
+                complete = mProgramListComplete;
+            }
+            pw.println(programList.toList().size() + " programs, " + staleCount + " stale, "
+                    + (complete ? "complete" : "incomplete"));
+        }
+        if (mProgramListScheduler != null) {
+            pw.println("  program list updates: "
+                    + mProgramListScheduler.getFlushedCount() + " pushed, "
+                    + mProgramListScheduler.getCoalescedCount() + " coalesced");
+        }
+
+        if (mRadioStorage != null) {
+            FavoritesSnapshot favorites = mRadioStorage.getFavorites().getValue();
+            pw.println("  favorites: " + (favorites == null ? "not loaded" : favorites.size()));
+        }
+
+        if (mImageCache != null) {
+            ImageMemoryCache.Stats stats = mImageCache.getStats();
+            long lookups = stats.hits + stats.negativeHits + stats.misses;
+            pw.println("  image cache: " + mImageCache.getMemorySize() + " bytes, " + stats
+                    + ", hit rate: " + (lookups == 0 ? 0 : 100 * stats.hits / lookups) + "%");
+        }
+
+        pw.println("  tune latency:");
+        mLatencyTracker.dump(pw, "    ");
+        pw.println("  recent tune operations:");
+        mLatencyTracker.dumpRecent(pw, "    ");
+    }
+
+    private static String getStartupStateName(int state) {
+        switch (state) {
+            case STARTUP_PENDING:
+                return "pending";
+            case STARTUP_READY:
+                return "ready";
+            case STARTUP_FAILED:
+                return "failed";
+            default:
+                return "unknown (" + state + ")";
+        }
+    }
+
     @NonNull
     @Override
     public Lifecycle getLifecycle() {
         return mLifecycleRegistry;
     }
 
+    /**
+     * Calls all registered {@link IRadioAppCallback}s on the callback thread.
+     */
+    private void notifyCallbacks(@NonNull CallbackOperation op) {
+        mCallbackHandler.post(() -> {
+            RadioTrace.begin("Radio.RadioAppService.notifyCallbacks");
+            int count = mRadioAppCallbacks.beginBroadcast();
+            try {
+                for (int i = 0; i < count; i++) {
+                    IRadioAppCallback callback = mRadioAppCallbacks.getBroadcastItem(i);
+                    ClientStats stats = (ClientStats) mRadioAppCallbacks.getBroadcastCookie(i);
+
+                    long startNs = SystemClock.elapsedRealtimeNanos();
+                    tryExec(() -> op.execute(callback));
+                    long durationNs = SystemClock.elapsedRealtimeNanos() - startNs;
+
+                    stats.record(durationNs);
+                    if (durationNs > SLOW_CALLBACK_THRESHOLD_NS) {
+                        Log.w(TAG, "Slow IRadioAppCallback client: " + (durationNs / 1000000)
+                                + "ms");
+                    }
+                }
+            } finally {
+                mRadioAppCallbacks.finishBroadcast();
+                RadioTrace.end();
+            }
+        });
+    }
+
     private void onPlaybackStateChanged(int newState) {
-        synchronized (mLock) {
-            mCurrentPlaybackState = newState;
-            for (IRadioAppCallback callback : mRadioAppCallbacks) {
-                tryExec(() -> callback.onPlaybackStateChanged(newState));
+        mState.updateAndGet(state -> state.withPlaybackState(newState));
+        notifyCallbacks(callback -> callback.onPlaybackStateChanged(newState));
+    }
+
+    /* Serves the last complete program list to clients, until the live list is complete. */
+    private void onProgramListSnapshotLoaded(@NonNull List<ProgramInfo> snapshot) {
+        ProgramList programList = mProgramList;
+        if (programList == null || snapshot.isEmpty()) return;
+
+        List<ProgramInfo> stale = new ArrayList<>(snapshot.size());
+        synchronized (mProgramListLock) {
+            if (mProgramListComplete) return;
+            Map<ProgramSelector.Identifier, ProgramInfo> staleMap = new HashMap<>();
+            for (ProgramInfo info : snapshot) {
+                ProgramSelector.Identifier id = info.getSelector().getPrimaryId();
+                if (programList.get(id) != null) continue;  // live entry takes precedence
+                staleMap.put(id, info);
+                stale.add(info);
             }
+            mStaleProgramList = staleMap;
         }
+        Log.i(TAG, "Serving " + stale.size() + " programs from the last snapshot");
+
+        notifyCallbacks(callback -> callback.onProgramListDelta(
+                stale, new int[0], new long[0], false));
     }
 
-    private void onProgramListChanged() {
-        synchronized (mLock) {
-            if (SystemClock.elapsedRealtime() - mLastProgramListPush > PROGRAM_LIST_RATE_LIMITING) {
-                pushProgramListUpdate();
+    private void onProgramListComplete() {
+        ProgramList programList = mProgramList;
+        synchronized (mProgramListLock) {
+            mProgramListComplete = true;
+            // drop stale programs that didn't make it to the live list
+            if (mStaleProgramList != null && programList != null) {
+                for (ProgramSelector.Identifier id : mStaleProgramList.keySet()) {
+                    if (programList.get(id) == null) mPendingRemoved.add(id);
+                }
             }
+            mStaleProgramList = null;
         }
-    }
+        // don't wait for the coalescing window, the list is now complete
+        mProgramListScheduler.flushNow();
 
-    private void pushProgramListUpdate() {
-        List<ProgramInfo> plist = mProgramList.toList();
+        if (programList != null && mSnapshotStore != null) {
+            mSnapshotStore.save(programList.toList());
+        }
+    }
 
-        synchronized (mLock) {
-            mLastProgramListPush = SystemClock.elapsedRealtime();
-            for (IRadioAppCallback callback : mRadioAppCallbacks) {
-                tryExec(() -> callback.onProgramListChanged(plist));
-            }
+    /* Returns the live program list, amended with stale programs if it's not complete yet. */
+    @NonNull
+    private List<ProgramInfo> getProgramListSnapshot(@NonNull ProgramList programList) {
+        List<ProgramInfo> live = programList.toList();
+        synchronized (mProgramListLock) {
+            if (mStaleProgramList == null) return live;
+            Map<ProgramSelector.Identifier, ProgramInfo> merged =
+                    new LinkedHashMap<>(mStaleProgramList);
+            for (ProgramInfo info : live) merged.put(info.getSelector().getPrimaryId(), info);
+            return new ArrayList<>(merged.values());
         }
     }
 
-    private void tuneToDefault(@Nullable ProgramType pt) {
-        synchronized (mLock) {
-            if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
-            TuneCallback tuneCb = mAudioStreamController.preparePlayback(
-                    AudioStreamController.OPERATION_TUNE);
-            if (tuneCb == null) return;
-
-            ProgramSelector sel = mRadioStorage.getRecentlySelected(pt);
-            if (sel != null) {
-                Log.i(TAG, "Restoring recently selected program: " + sel);
-                mRadioTuner.tune(sel, tuneCb);
-                return;
+    /* Runs on mHandler only (through mProgramListScheduler), so that deltas are delivered to
+     * clients in the order of their snapshots. */
+    private void pushProgramListUpdate() {
+        ProgramList programList = mProgramList;
+        if (programList == null) return;
+
+        List<ProgramInfo> modified;
+        int[] removedTypes;
+        long[] removedValues;
+        boolean complete;
+        synchronized (mProgramListLock) {
+            modified = new ArrayList<>(mPendingModified.size());
+            for (ProgramSelector.Identifier id : mPendingModified) {
+                ProgramInfo info = programList.get(id);
+                if (info != null) modified.add(info);
             }
-
-            if (pt == null) pt = ProgramType.FM;
-            Log.i(TAG, "No recently selected program set, selecting default channel for " + pt);
-            pt.tuneToDefault(mRadioTuner, mWrapper.getRegionConfig(), tuneCb);
+            removedTypes = new int[mPendingRemoved.size()];
+            removedValues = new long[mPendingRemoved.size()];
+            int i = 0;
+            for (ProgramSelector.Identifier id : mPendingRemoved) {
+                removedTypes[i] = id.getType();
+                removedValues[i] = id.getValue();
+                i++;
+            }
+            mPendingModified.clear();
+            mPendingRemoved.clear();
+            complete = mProgramListComplete;
         }
+
+        ArtworkPrefetcher prefetcher = mArtworkPrefetcher;
+        if (prefetcher != null) prefetcher.onProgramListChanged();
+
+        notifyCallbacks(callback -> callback.onProgramListDelta(
+                modified, removedTypes, removedValues, complete));
     }
 
     private void close() {
-        synchronized (mLock) {
+        if (mTuneQueue != null) mTuneQueue.cancel();
+        synchronized (mTuneLock) {
+            mIsDestroyed = true;
+            if (mStartupState == STARTUP_PENDING) mStartupState = STARTUP_FAILED;
+        }
+        dropPendingCommands();
+        if (mProgramListScheduler != null) mProgramListScheduler.cancel();
+        ArtworkPrefetcher prefetcher = mArtworkPrefetcher;
+        mArtworkPrefetcher = null;
+        if (prefetcher != null) prefetcher.close();
+
+        synchronized (mTuneLock) {
             if (mAudioStreamController != null) {
                 mAudioStreamController.requestMuted(true);
                 mAudioStreamController = null;
             }
-            if (mProgramList != null) {
-                mProgramList.close();
-                mProgramList = null;
-            }
+            ProgramList programList = mProgramList;
+            mProgramList = null;
+            if (programList != null) programList.close();
             if (mRadioTuner != null) {
+                mRadioManager.onSessionClosed(mRadioTuner);
                 mRadioTuner.close();
                 mRadioTuner = null;
             }
+            RadioTunerExt scanTuner = mScanTuner;
+            mScanTuner = null;
+            if (scanTuner != null) {
+                mRadioManager.onSessionClosed(scanTuner);
+                scanTuner.close();
+            }
         }
     }
 
@@ -257,82 +741,209 @@ public class RadioAppService extends MediaBrowserService implements LifecycleOwn
     private void onHardwareError() {
         close();
         stopSelf();
-        synchronized (mLock) {
-            for (IRadioAppCallback callback : mRadioAppCallbacks) {
-                tryExec(() -> callback.onHardwareError());
+        notifyCallbacks(callback -> callback.onHardwareError());
+    }
+
+    private static int getBandId(@Nullable ProgramSelector sel) {
+        ProgramType type = ProgramType.fromSelector(sel);
+        return (type == null) ? 0 : type.id;
+    }
+
+    private int getCurrentBandId() {
+        ProgramInfo current = mState.get().currentProgram;
+        return getBandId(current == null ? null : current.getSelector());
+    }
+
+    /* Runs operations coalesced by mTuneQueue; client callbacks are called by the queue. */
+    private final TuneCommandQueue.Executor mTuneExecutor = new TuneCommandQueue.Executor() {
+        @Override
+        public void tune(@NonNull ProgramSelector sel, @NonNull TuneCallback result) {
+            synchronized (mTuneLock) {
+                if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+                TuneLatencyTracker.Trace trace = mLatencyTracker.startTrace(
+                        AudioStreamController.OPERATION_TUNE, getBandId(sel));
+                TuneCallback tuneCb = mAudioStreamController.preparePlayback(
+                        AudioStreamController.OPERATION_TUNE, trace);
+                if (tuneCb == null) {
+                    result.onFinished(false);
+                    return;
+                }
+                mRadioTuner.tune(sel, tuneCb.alsoCall(result), trace);
             }
         }
-    }
 
-    private IRadioAppService.Stub mBinder = new IRadioAppService.Stub() {
         @Override
-        public void addCallback(IRadioAppCallback callback) throws RemoteException {
-            synchronized (mLock) {
-                if (mCurrentProgram != null) callback.onCurrentProgramChanged(mCurrentProgram);
-                callback.onPlaybackStateChanged(mCurrentPlaybackState);
-                if (mProgramList != null) callback.onProgramListChanged(mProgramList.toList());
-                mRadioAppCallbacks.add(callback);
+        public void tuneToDefault(@Nullable ProgramType band, @NonNull TuneCallback result) {
+            synchronized (mTuneLock) {
+                if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+                ProgramSelector sel = mRadioStorage.getRecentlySelected(band);
+                if (sel != null) {
+                    Log.i(TAG, "Restoring recently selected program: " + sel);
+                    tune(sel, result);
+                    return;
+                }
+
+                ProgramType pt = (band == null) ? ProgramType.FM : band;
+                Log.i(TAG, "No recently selected program set, selecting default channel for "
+                        + pt);
+                TuneLatencyTracker.Trace trace = mLatencyTracker.startTrace(
+                        AudioStreamController.OPERATION_TUNE, pt.id);
+                TuneCallback tuneCb = mAudioStreamController.preparePlayback(
+                        AudioStreamController.OPERATION_TUNE, trace);
+                if (tuneCb == null) {
+                    result.onFinished(false);
+                    return;
+                }
+                // tune and seek to the first station are traced as a single operation
+                trace.markHalCallIssued();
+                pt.tuneToDefault(mRadioTuner, mWrapper.getRegionConfig(),
+                        tuneCb.alsoCall(trace::finish).alsoCall(result));
             }
         }
 
         @Override
-        public void removeCallback(IRadioAppCallback callback) {
-            synchronized (mLock) {
-                mRadioAppCallbacks.remove(callback);
+        public void seek(boolean forward, @NonNull TuneCallback result) {
+            synchronized (mTuneLock) {
+                if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+                int operation = forward ? AudioStreamController.OPERATION_SEEK_FWD
+                        : AudioStreamController.OPERATION_SEEK_BKW;
+                TuneLatencyTracker.Trace trace =
+                        mLatencyTracker.startTrace(operation, getCurrentBandId());
+                TuneCallback tuneCb = mAudioStreamController.preparePlayback(operation, trace);
+                if (tuneCb == null) {
+                    result.onFinished(false);
+                    return;
+                }
+                mRadioTuner.seek(forward, tuneCb.alsoCall(result), trace);
             }
         }
 
         @Override
-        public void tune(ProgramSelector sel, ITuneCallback callback) {
-            Objects.requireNonNull(callback);
-            synchronized (mLock) {
+        public void step(boolean forward, @NonNull TuneCallback result) {
+            synchronized (mTuneLock) {
                 if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
-                TuneCallback tuneCb = mAudioStreamController.preparePlayback(
-                        AudioStreamController.OPERATION_TUNE);
-                if (tuneCb == null) return;
-                mRadioTuner.tune(sel, tuneCb.alsoCall(
-                        succ -> tryExec(() -> callback.onFinished(succ))));
+                int operation = forward ? AudioStreamController.OPERATION_STEP_FWD
+                        : AudioStreamController.OPERATION_STEP_BKW;
+                TuneLatencyTracker.Trace trace =
+                        mLatencyTracker.startTrace(operation, getCurrentBandId());
+                TuneCallback tuneCb = mAudioStreamController.preparePlayback(operation, trace);
+                if (tuneCb == null) {
+                    result.onFinished(false);
+                    return;
+                }
+                mRadioTuner.step(forward, tuneCb.alsoCall(result), trace);
+            }
+        }
+
+        @Override
+        @Nullable
+        public ProgramSelector resolveStepTarget(int steps) {
+            // mState is updated asynchronously, so it may not reflect the last operation yet
+            RadioTunerExt tuner = mRadioTuner;
+            ProgramInfo current = tuner == null ? null : tuner.getProgramInfo();
+            if (current == null) return null;
+            ProgramSelector sel = current.getSelector();
+            ProgramType type = ProgramType.fromSelector(sel);
+            if (type != ProgramType.AM && type != ProgramType.FM) return null;
+            if (!ProgramSelectorExt.hasId(sel, ProgramSelector.IDENTIFIER_TYPE_AMFM_FREQUENCY)) {
+                return null;
             }
+            long freq = sel.getFirstId(ProgramSelector.IDENTIFIER_TYPE_AMFM_FREQUENCY);
+
+            RegionConfig config = mWrapper.getRegionConfig();
+            List<BandDescriptor> bands =
+                    (type == ProgramType.AM) ? config.getAmConfig() : config.getFmConfig();
+            for (BandDescriptor band : bands) {
+                int spacing = band.getSpacing();
+                if (spacing <= 0 || freq < band.getLowerLimit() || freq > band.getUpperLimit()) {
+                    continue;
+                }
+                // stepping past the band edge is up to the tuner (it may wrap or switch bands)
+                long target = freq + (long) steps * spacing;
+                if (target < band.getLowerLimit() || target > band.getUpperLimit()) return null;
+                return ProgramSelectorExt.createAmFmSelector((int) target);
+            }
+            return null;
+        }
+    };
+
+    private IRadioAppService.Stub mBinder = new IRadioAppService.Stub() {
+        @Override
+        public void addCallback(IRadioAppCallback callback) {
+            Objects.requireNonNull(callback);
+            // the initial state is sent on the callback thread, so it's not reordered with updates
+            mCallbackHandler.post(() -> {
+                if (!mRadioAppCallbacks.register(callback, new ClientStats())) {
+                    Log.w(TAG, "IRadioAppCallback client is already dead");
+                    return;
+                }
+                int startupState = mStartupState;
+                if (startupState != STARTUP_PENDING) {
+                    tryExec(() -> callback.onStartupFinished(startupState == STARTUP_READY));
+                }
+                ServiceState state = mState.get();
+                if (state.currentProgram != null) {
+                    tryExec(() -> callback.onCurrentProgramChanged(state.currentProgram));
+                }
+                tryExec(() -> callback.onPlaybackStateChanged(state.playbackState));
+                ProgramList programList = mProgramList;
+                if (programList != null) {
+                    boolean complete;
+                    synchronized (mProgramListLock) {
+                        complete = mProgramListComplete;
+                    }
+                    List<ProgramInfo> programs = getProgramListSnapshot(programList);
+                    tryExec(() -> callback.onProgramListChanged(programs, complete));
+                }
+            });
+        }
+
+        @Override
+        public void removeCallback(IRadioAppCallback callback) {
+            mCallbackHandler.post(() -> mRadioAppCallbacks.unregister(callback));
+        }
+
+        @Override
+        public void tune(ProgramSelector sel, ITuneCallback callback) {
+            Objects.requireNonNull(callback);
+            if (deferUntilReady(() -> tune(sel, callback), callback)) return;
+            if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+            mTuneQueue.tune(sel, succ -> tryExec(() -> callback.onFinished(succ)));
         }
 
         @Override
         public void seek(boolean forward, ITuneCallback callback) {
             Objects.requireNonNull(callback);
-            synchronized (mLock) {
-                if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
-                TuneCallback tuneCb = mAudioStreamController.preparePlayback(forward
-                        ? AudioStreamController.OPERATION_SEEK_FWD
-                        : AudioStreamController.OPERATION_SEEK_BKW);
-                if (tuneCb == null) return;
-                mRadioTuner.seek(forward, tuneCb.alsoCall(
-                        succ -> tryExec(() -> callback.onFinished(succ))));
-            }
+            if (deferUntilReady(() -> seek(forward, callback), callback)) return;
+            if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+            mTuneQueue.seek(forward, succ -> tryExec(() -> callback.onFinished(succ)));
         }
 
         @Override
         public void step(boolean forward, ITuneCallback callback) {
             Objects.requireNonNull(callback);
-            synchronized (mLock) {
-                if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
-                TuneCallback tuneCb = mAudioStreamController.preparePlayback(forward
-                        ? AudioStreamController.OPERATION_STEP_FWD
-                        : AudioStreamController.OPERATION_STEP_BKW);
-                if (tuneCb == null) return;
-                mRadioTuner.step(forward, tuneCb.alsoCall(
-                        succ -> tryExec(() -> callback.onFinished(succ))));
-            }
+            if (deferUntilReady(() -> step(forward, callback), callback)) return;
+            if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+            mTuneQueue.step(forward, succ -> tryExec(() -> callback.onFinished(succ)));
         }
 
         @Override
         public void setMuted(boolean muted) {
-            if (mAudioStreamController == null) return;
-            if (muted) mRadioTuner.cancel();
-            mAudioStreamController.requestMuted(muted);
+            if (deferUntilReady(() -> setMuted(muted), false)) return;
+            // pending seek and step requests are dropped along with the operation in flight
+            if (muted) mTuneQueue.cancel();
+            synchronized (mTuneLock) {
+                if (mAudioStreamController == null) return;
+                if (muted) mRadioTuner.cancel();
+                mAudioStreamController.requestMuted(muted);
+            }
         }
 
         @Override
         public void switchBand(ProgramType band) {
-            tuneToDefault(band);
+            if (deferUntilReady(() -> switchBand(band), true)) return;
+            if (mRadioTuner == null) throw new IllegalStateException("Tuner session is closed");
+            mTuneQueue.tuneToDefault(band, succeeded -> {});
         }
 
         @Override
@@ -342,7 +953,7 @@ public class RadioAppService extends MediaBrowserService implements LifecycleOwn
 
         @Override
         public RegionConfig getRegionConfig() {
-            synchronized (mLock) {
+            synchronized (mRegionConfigLock) {
                 if (mRegionConfigCache == null) {
                     mRegionConfigCache = new RegionConfig(mRadioManager.getAmFmRegionConfig());
                 }
@@ -351,6 +962,20 @@ public class RadioAppService extends MediaBrowserService implements LifecycleOwn
         }
     };
 
+    /* The background scanning tuner is not audible, so its failures are not fatal for the
+     * service; the program list just stops updating. */
+    private final RadioTuner.Callback mScanCallback = new RadioTuner.Callback() {
+        @Override
+        public void onError(int status) {
+            Log.w(TAG, "Background scanning tuner error: " + status);
+        }
+
+        @Override
+        public void onControlChanged(boolean control) {
+            if (!control) Log.w(TAG, "Background scanning tuner lost control");
+        }
+    };
+
     private RadioTuner.Callback mHardwareCallback = new RadioTuner.Callback() {
         @Override
         public void onProgramInfoChanged(ProgramInfo info) {
@@ -360,18 +985,14 @@ public class RadioAppService extends MediaBrowserService implements LifecycleOwn
                 Log.d(TAG, "Program info changed: " + info);
             }
 
-            synchronized (mLock) {
-                mCurrentProgram = info;
+            mState.updateAndGet(state -> state.withCurrentProgram(info));
 
-                /* Storing recently selected program might be limited to explicit tune calls only
-                 * (including next/prev seek), but the implementation would be nontrivial with the
-                 * current API. For now, let's make it simple and make it react to all program
-                 * selector changes. */
-                mRadioStorage.setRecentlySelected(info.getSelector());
-                for (IRadioAppCallback callback : mRadioAppCallbacks) {
-                    tryExec(() -> callback.onCurrentProgramChanged(info));
-                }
-            }
+            /* Storing recently selected program might be limited to explicit tune calls only
+             * (including next/prev seek), but the implementation would be nontrivial with the
+             * current API. For now, let's make it simple and make it react to all program
+             * selector changes. */
+            mRadioStorage.setRecentlySelected(info.getSelector());
+            notifyCallbacks(callback -> callback.onCurrentProgramChanged(info));
         }
 
         @Override
@@ -39,7 +39,10 @@ import com.android.car.radio.util.Log;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -51,7 +54,8 @@ public class RadioAppServiceWrapper {
     private static final String TAG = "BcRadioApp.servicewr";
 
     /**
-     * Binding has just been requested and we're connecting to the {@link RadioAppService} now.
+     * Binding has just been requested and we're connecting to the {@link RadioAppService} now,
+     * or the service is still opening its tuner session.
      */
     public static final int STATE_CONNECTING = 1;
 
@@ -91,10 +95,16 @@ public class RadioAppServiceWrapper {
     private final MutableLiveData<Integer> mPlaybackState = new MutableLiveData<>();
     private final MutableLiveData<ProgramInfo> mCurrentProgram = new MutableLiveData<>();
     private final MutableLiveData<List<ProgramInfo>> mProgramList = new MutableLiveData<>();
+    private final MutableLiveData<Boolean> mProgramListComplete = new MutableLiveData<>();
+
+    // materialized program list, updated with deltas pushed by RadioAppService
+    private final Map<ProgramSelector.Identifier, ProgramInfo> mProgramListCache =
+            new LinkedHashMap<>();
 
     {
         mConnectionState.postValue(STATE_CONNECTING);
         mPlaybackState.postValue(PlaybackState.STATE_NONE);
+        mProgramListComplete.postValue(false);
     }
 
     private static class TuneCallbackAdapter extends ITuneCallback.Stub {
@@ -159,6 +169,15 @@ public class RadioAppServiceWrapper {
     };
 
     private final IRadioAppCallback mCallback = new IRadioAppCallback.Stub() {
+        @Override
+        public void onStartupFinished(boolean succeeded) {
+            if (succeeded) {
+                mConnectionState.postValue(STATE_CONNECTED);
+            } else {
+                onNoHardware();
+            }
+        }
+
         @Override
         public void onHardwareError() {
             onServiceFailure();
@@ -175,8 +194,31 @@ public class RadioAppServiceWrapper {
         }
 
         @Override
-        public void onProgramListChanged(List<ProgramInfo> plist) {
-            mProgramList.postValue(plist);
+        public void onProgramListChanged(List<ProgramInfo> plist, boolean complete) {
+            synchronized (mLock) {
+                mProgramListCache.clear();
+                for (ProgramInfo info : plist) {
+                    mProgramListCache.put(info.getSelector().getPrimaryId(), info);
+                }
+                mProgramList.postValue(new ArrayList<>(mProgramListCache.values()));
+                mProgramListComplete.postValue(complete);
+            }
+        }
+
+        @Override
+        public void onProgramListDelta(List<ProgramInfo> modified, int[] removedIdTypes,
+                long[] removedIdValues, boolean complete) {
+            synchronized (mLock) {
+                for (int i = 0; i < removedIdTypes.length; i++) {
+                    mProgramListCache.remove(new ProgramSelector.Identifier(
+                            removedIdTypes[i], removedIdValues[i]));
+                }
+                for (ProgramInfo info : modified) {
+                    mProgramListCache.put(info.getSelector().getPrimaryId(), info);
+                }
+                mProgramList.postValue(new ArrayList<>(mProgramListCache.values()));
+                mProgramListComplete.postValue(complete);
+            }
         }
     };
 
@@ -208,8 +250,8 @@ public class RadioAppServiceWrapper {
     private void onServiceConnected(IBinder binder, @NonNull IRadioAppService service) {
         Log.d(TAG, "RadioAppService connected");
         mService.set(service);
+        // connection state changes to STATE_CONNECTED when the service reports it's ready
         initialize(service);
-        mConnectionState.postValue(STATE_CONNECTED);
     }
 
     private void onServiceFailure() {
@@ -225,6 +267,16 @@ public class RadioAppServiceWrapper {
         mConnectionState.postValue(STATE_NOT_SUPPORTED);
     }
 
+    private void onNoHardware() {
+        Log.i(TAG, "RadioAppService couldn't open tuner session. "
+                + "It means the radio hardware is not available");
+        if (mClientContext != null) {
+            if (mService.getAndSet(null) == null) return;
+            mClientContext.unbindService(mServiceConnection);
+        }
+        mConnectionState.postValue(STATE_NOT_SUPPORTED);
+    }
+
     private interface ServiceVoidOperation {
         void execute(@NonNull IRadioAppService service) throws RemoteException;
     }
@@ -296,6 +348,16 @@ public class RadioAppServiceWrapper {
         return mProgramList;
     }
 
+    /**
+     * Returns a {@link LiveData} stating whether the program list has been fully populated.
+     *
+     * Until it is, the list may be missing programs or contain ones left from the last scan.
+     */
+    @NonNull
+    public LiveData<Boolean> getProgramListComplete() {
+        return mProgramListComplete;
+    }
+
     /**
      * Tunes to a given program.
      */
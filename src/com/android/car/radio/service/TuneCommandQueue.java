@@ -0,0 +1,406 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.service;
+
+import android.hardware.radio.ProgramSelector;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.radio.bands.ProgramType;
+import com.android.car.radio.platform.RadioTunerExt.TuneCallback;
+import com.android.car.radio.util.Log;
+import com.android.internal.annotations.GuardedBy;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Coalesces bursts of seek and step requests into net tuner operations.
+ *
+ * A request arriving while the tuner is idle is executed immediately. Requests arriving while an
+ * operation is in flight are accumulated as a net count of steps or seeks in either direction
+ * and executed as soon as that operation finishes:
+ *  - opposite requests cancel out, so no tuner call is made for them;
+ *  - multiple steps are turned into a single tune, if the target program can be computed;
+ *  - other multi-operation requests are executed one after another, without cancellations.
+ *
+ * If the operation in flight takes long (e.g. a seek over an empty band), accumulated requests
+ * supersede it once they went quiet for the coalescing window, or at the latest after the
+ * maximum latency since the first of them, so that held or repeated buttons keep moving.
+ *
+ * Tune requests are never coalesced; they supersede all pending requests, just like the tuner
+ * cancels an ongoing operation when a new one arrives. Every request gets exactly one
+ * completion callback: with the result of the operation it was merged into, or failure if it
+ * was superseded. Requests that cancelled out are reported as superseded too, since the tuner
+ * didn't move for them.
+ */
+class TuneCommandQueue {
+    private static final String TAG = "BcRadioApp.tunequeue";
+
+    private static final int KIND_NONE = 0;
+    private static final int KIND_SEEK = 1;
+    private static final int KIND_STEP = 2;
+
+    /**
+     * Executes tuner operations.
+     */
+    interface Executor {
+        void tune(@NonNull ProgramSelector sel, @NonNull TuneCallback result);
+
+        /**
+         * Tunes to the recently selected program of a given band, or its default channel.
+         */
+        void tuneToDefault(@Nullable ProgramType band, @NonNull TuneCallback result);
+
+        void seek(boolean forward, @NonNull TuneCallback result);
+
+        void step(boolean forward, @NonNull TuneCallback result);
+
+        /**
+         * Computes the program a given number of steps away from the current one.
+         *
+         * Called after the previous operation finished, so the current program must reflect
+         * its result.
+         *
+         * @return Target program, or {@code null} if it can't be determined
+         */
+        @Nullable ProgramSelector resolveStepTarget(int steps);
+    }
+
+    private final Object mLock = new Object();
+    private final Handler mHandler;
+    private final Executor mExecutor;
+    private final long mWindowMs;
+    private final long mMaxLatencyMs;
+    private final Runnable mFlushRunnable = this::flush;
+
+    // operation in flight
+    @GuardedBy("mLock")
+    private long mOperationId;
+    @GuardedBy("mLock")
+    private boolean mIsInFlight;
+    @GuardedBy("mLock")
+    private int mInFlightKind = KIND_NONE;
+    @GuardedBy("mLock")
+    private int mInFlightRemaining;  // signed: positive is forward
+    @GuardedBy("mLock")
+    private List<TuneCallback> mInFlightCallbacks = new ArrayList<>();
+
+    // requests accumulated during the current burst
+    @GuardedBy("mLock")
+    private int mPendingKind = KIND_NONE;
+    @GuardedBy("mLock")
+    private int mPendingNet;
+    @GuardedBy("mLock")
+    private List<TuneCallback> mPendingCallbacks = new ArrayList<>();
+    @GuardedBy("mLock")
+    private long mFirstPendingTime;
+
+    // for dump only
+    @GuardedBy("mLock")
+    private long mRequestCount;
+    @GuardedBy("mLock")
+    private long mTunerCallCount;
+
+    /**
+     * @param handler Handler to execute deferred operations on
+     * @param executor Tuner operations executor
+     * @param windowMs Quiet period after the last accumulated request, before it supersedes the
+     *        operation in flight
+     * @param maxLatencyMs Maximum delay between the first accumulated request and its execution
+     */
+    TuneCommandQueue(@NonNull Handler handler, @NonNull Executor executor, long windowMs,
+            long maxLatencyMs) {
+        if (windowMs < 0) throw new IllegalArgumentException("windowMs must not be negative");
+        if (maxLatencyMs < 0) {
+            throw new IllegalArgumentException("maxLatencyMs must not be negative");
+        }
+        mHandler = Objects.requireNonNull(handler);
+        mExecutor = Objects.requireNonNull(executor);
+        mWindowMs = windowMs;
+        mMaxLatencyMs = maxLatencyMs;
+    }
+
+    /* A tuner operation, reporting its result to a given callback. */
+    private interface Operation {
+        void execute(@NonNull TuneCallback done);
+    }
+
+    /**
+     * Tunes to a given program, superseding all pending requests.
+     */
+    void tune(@NonNull ProgramSelector sel, @NonNull TuneCallback result) {
+        Objects.requireNonNull(sel);
+        supersedeAll(done -> mExecutor.tune(sel, done), result);
+    }
+
+    /**
+     * Tunes to the recently selected program of a given band (or its default channel),
+     * superseding all pending requests.
+     *
+     * @param band Band to tune to, {@code null} for the recently selected one
+     */
+    void tuneToDefault(@Nullable ProgramType band, @NonNull TuneCallback result) {
+        supersedeAll(done -> mExecutor.tuneToDefault(band, done), result);
+    }
+
+    private void supersedeAll(@NonNull Operation operation, @NonNull TuneCallback result) {
+        Objects.requireNonNull(result);
+        List<TuneCallback> superseded = new ArrayList<>();
+        long operationId;
+        synchronized (mLock) {
+            mRequestCount++;
+            mHandler.removeCallbacks(mFlushRunnable);
+
+            // the tuner cancels the operation in flight, if there is any
+            if (mIsInFlight) superseded.addAll(mInFlightCallbacks);
+            superseded.addAll(mPendingCallbacks);
+            clearPendingLocked();
+            operationId = startOperationLocked(KIND_NONE, 0, result);
+        }
+        completeAll(superseded, false);
+        execute(operationId, operation);
+    }
+
+    /**
+     * Seeks forward or backwards, coalescing with other seek requests of the current burst.
+     */
+    void seek(boolean forward, @NonNull TuneCallback result) {
+        enqueue(KIND_SEEK, forward, result);
+    }
+
+    /**
+     * Steps forward or backwards, coalescing with other step requests of the current burst.
+     */
+    void step(boolean forward, @NonNull TuneCallback result) {
+        enqueue(KIND_STEP, forward, result);
+    }
+
+    /**
+     * Checks, if a tuner operation is in flight or requests are waiting for execution.
+     */
+    boolean isBusy() {
+        synchronized (mLock) {
+            return mIsInFlight || mPendingKind != KIND_NONE;
+        }
+    }
+
+    /**
+     * Prints the queue state and counters.
+     */
+    void dump(@NonNull PrintWriter pw, @NonNull String prefix) {
+        synchronized (mLock) {
+            pw.println(prefix + "in flight: " + (mIsInFlight ? describe(mInFlightKind,
+                    mInFlightRemaining) + " (" + mInFlightCallbacks.size() + " requests)"
+                    : "none"));
+            pw.println(prefix + "pending: " + (mPendingKind != KIND_NONE
+                    ? describe(mPendingKind, mPendingNet) + " (" + mPendingCallbacks.size()
+                    + " requests)" : "none"));
+            pw.println(prefix + "requests: " + mRequestCount + ", tuner calls: " + mTunerCallCount
+                    + ", saved calls: " + (mRequestCount - mTunerCallCount));
+        }
+    }
+
+    private static String describe(int kind, int net) {
+        switch (kind) {
+            case KIND_SEEK:
+                return "seek " + net;
+            case KIND_STEP:
+                return "step " + net;
+            default:
+                return "tune";
+        }
+    }
+
+    /**
+     * Fails all pending requests and drops the operation in flight.
+     */
+    void cancel() {
+        List<TuneCallback> failed = new ArrayList<>();
+        synchronized (mLock) {
+            mHandler.removeCallbacks(mFlushRunnable);
+            failed.addAll(mInFlightCallbacks);
+            failed.addAll(mPendingCallbacks);
+            mOperationId++;
+            mIsInFlight = false;
+            mInFlightCallbacks = new ArrayList<>();
+            clearPendingLocked();
+        }
+        completeAll(failed, false);
+    }
+
+    private void enqueue(int kind, boolean forward, @NonNull TuneCallback result) {
+        Objects.requireNonNull(result);
+        List<TuneCallback> superseded = null;
+        long operationId = 0;
+        synchronized (mLock) {
+            mRequestCount++;
+            if (!mIsInFlight && mPendingKind == KIND_NONE) {
+                operationId = startOperationLocked(kind, forward ? 1 : -1, result);
+            } else {
+                long now = SystemClock.uptimeMillis();
+                if (mPendingKind != kind && mPendingKind != KIND_NONE) {
+                    // a different kind of operation supersedes the pending one
+                    superseded = mPendingCallbacks;
+                    clearPendingLocked();
+                }
+                if (mPendingKind == KIND_NONE) mFirstPendingTime = now;
+                mPendingKind = kind;
+                mPendingNet += forward ? 1 : -1;
+                mPendingCallbacks.add(result);
+
+                long deadline = Math.min(now + mWindowMs, mFirstPendingTime + mMaxLatencyMs);
+                mHandler.removeCallbacks(mFlushRunnable);
+                mHandler.postAtTime(mFlushRunnable, deadline);
+            }
+        }
+        if (superseded != null) completeAll(superseded, false);
+        if (operationId != 0) executeSingle(operationId, kind, forward);
+    }
+
+    @GuardedBy("mLock")
+    private void clearPendingLocked() {
+        mPendingKind = KIND_NONE;
+        mPendingNet = 0;
+        mPendingCallbacks = new ArrayList<>();
+    }
+
+    @GuardedBy("mLock")
+    private long startOperationLocked(int kind, int remaining, @NonNull TuneCallback result) {
+        List<TuneCallback> callbacks = new ArrayList<>();
+        callbacks.add(result);
+        return startOperationLocked(kind, remaining, callbacks);
+    }
+
+    @GuardedBy("mLock")
+    private long startOperationLocked(int kind, int remaining,
+            @NonNull List<TuneCallback> callbacks) {
+        mOperationId++;
+        mIsInFlight = true;
+        mInFlightKind = kind;
+        mInFlightRemaining = remaining;
+        mInFlightCallbacks = callbacks;
+        mTunerCallCount++;
+        return mOperationId;
+    }
+
+    /* Executes a single seek or step of the operation in flight; it counts as one tuner call. */
+    private void executeSingle(long operationId, int kind, boolean forward) {
+        synchronized (mLock) {
+            if (operationId != mOperationId) return;
+            mInFlightRemaining -= forward ? 1 : -1;
+        }
+        TuneCallback done = succeeded -> onOperationFinished(operationId, succeeded);
+        try {
+            if (kind == KIND_SEEK) {
+                mExecutor.seek(forward, done);
+            } else {
+                mExecutor.step(forward, done);
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Tuner operation failed", e);
+            onOperationFinished(operationId, false);
+        }
+    }
+
+    private void execute(long operationId, @NonNull Operation operation) {
+        try {
+            operation.execute(succeeded -> onOperationFinished(operationId, succeeded));
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Tuner operation failed", e);
+            onOperationFinished(operationId, false);
+        }
+    }
+
+    private void onOperationFinished(long operationId, boolean succeeded) {
+        List<TuneCallback> finished;
+        synchronized (mLock) {
+            if (operationId != mOperationId || !mIsInFlight) return;
+
+            // continue multi-step operations
+            if (succeeded && mInFlightRemaining != 0) {
+                boolean forward = mInFlightRemaining > 0;
+                int kind = mInFlightKind;
+                mTunerCallCount++;
+                mHandler.post(() -> executeSingle(operationId, kind, forward));
+                return;
+            }
+
+            mIsInFlight = false;
+            finished = mInFlightCallbacks;
+            mInFlightCallbacks = new ArrayList<>();
+
+            // the tuner is idle, don't keep accumulated requests waiting
+            if (mPendingKind != KIND_NONE) {
+                mHandler.removeCallbacks(mFlushRunnable);
+                mHandler.post(mFlushRunnable);
+            }
+        }
+        completeAll(finished, succeeded);
+    }
+
+    private void flush() {
+        List<TuneCallback> noop = null;
+        List<TuneCallback> superseded = null;
+        long operationId;
+        int kind;
+        int net;
+        ProgramSelector stepTarget = null;
+        synchronized (mLock) {
+            if (mPendingKind == KIND_NONE) return;
+            kind = mPendingKind;
+            net = mPendingNet;
+            List<TuneCallback> callbacks = mPendingCallbacks;
+            clearPendingLocked();
+
+            if (net == 0) {
+                // requests cancelled each other out
+                noop = callbacks;
+                operationId = 0;
+            } else {
+                if (mIsInFlight) {
+                    // the deadline passed while the operation is still running; the tuner
+                    // cancels it, and its final position is not known in advance
+                    superseded = mInFlightCallbacks;
+                } else if (kind == KIND_STEP && Math.abs(net) > 1) {
+                    stepTarget = mExecutor.resolveStepTarget(net);
+                }
+                operationId = startOperationLocked(kind, stepTarget != null ? 0 : net, callbacks);
+            }
+        }
+
+        if (superseded != null) completeAll(superseded, false);
+        if (noop != null) {
+            // the tuner stays where it is, so none of the requests had any effect
+            completeAll(noop, false);
+        } else if (stepTarget != null) {
+            ProgramSelector target = stepTarget;
+            execute(operationId, done -> mExecutor.tune(target, done));
+        } else {
+            executeSingle(operationId, kind, net > 0);
+        }
+    }
+
+    private static void completeAll(@NonNull List<TuneCallback> callbacks, boolean succeeded) {
+        for (TuneCallback callback : callbacks) callback.onFinished(succeeded);
+    }
+}
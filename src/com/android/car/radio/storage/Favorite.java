@@ -40,8 +40,11 @@ class Favorite {
     @NonNull
     public final String name;
 
+    /** Position on the presets list; new favorites are added at the end. */
+    public final int position;
+
     Favorite(@NonNull IdentifierEntity primaryId, @NonNull ProgramSelector selector,
-            @NonNull String name) {
+            @NonNull String name, int position) {
         if (!primaryId.sameAs(selector.getPrimaryId())) {
             throw new IllegalArgumentException(
                     "Can't set different primary ID than program selector's");
@@ -50,11 +53,12 @@ class Favorite {
         this.primaryId = primaryId;
         this.selector = selector;
         this.name = Objects.requireNonNull(name);
+        this.position = position;
     }
 
-    Favorite(@NonNull Program program) {
+    Favorite(@NonNull Program program, int position) {
         this(new IdentifierEntity(program.getSelector().getPrimaryId()),
-                program.getSelector(), program.getName());
+                program.getSelector(), program.getName(), position);
     }
 
     @NonNull
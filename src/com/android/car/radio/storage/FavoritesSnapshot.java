@@ -0,0 +1,127 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.storage;
+
+import android.hardware.radio.ProgramSelector;
+
+import androidx.annotation.NonNull;
+
+import com.android.car.broadcastradio.support.Program;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the favorites list.
+ *
+ * The snapshot is built once per database change and shared by all consumers. Membership checks
+ * by primary identifier are done in constant time, without allocations, using an open-addressing
+ * hash table keyed on primitive identifier (type, value) pairs.
+ */
+public final class FavoritesSnapshot {
+    /** Empty snapshot, used before the database is loaded. */
+    public static final FavoritesSnapshot EMPTY = new FavoritesSnapshot(Collections.emptyList());
+
+    private final List<Program> mPrograms;
+    private final Set<Program> mProgramSet;
+
+    // open-addressing table: slot is free if mTypes[slot] == 0 (identifier types start at 1)
+    private final long[] mValues;
+    private final int[] mTypes;
+    private final int mMask;
+
+    /**
+     * Builds a snapshot for a given favorites list.
+     */
+    public FavoritesSnapshot(@NonNull List<Program> favorites) {
+        mPrograms = Collections.unmodifiableList(new ArrayList<>(favorites));
+        mProgramSet = Collections.unmodifiableSet(new HashSet<>(favorites));
+
+        // keep load factor at or below 0.5
+        int capacity = Integer.highestOneBit(Math.max(favorites.size(), 1) * 4 - 1);
+        mValues = new long[capacity];
+        mTypes = new int[capacity];
+        mMask = capacity - 1;
+
+        for (Program program : mPrograms) {
+            ProgramSelector.Identifier id = program.getSelector().getPrimaryId();
+            int slot = findSlot(id.getType(), id.getValue());
+            mTypes[slot] = id.getType();
+            mValues[slot] = id.getValue();
+        }
+    }
+
+    private static int hash(int type, long value) {
+        long h = value * 0x9E3779B97F4A7C15L + type;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /* Returns a slot holding a given identifier or the first free slot, where it would go. */
+    private int findSlot(int type, long value) {
+        int slot = hash(type, value) & mMask;
+        while (mTypes[slot] != 0 && (mTypes[slot] != type || mValues[slot] != value)) {
+            slot = (slot + 1) & mMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Checks, if a program with a given primary identifier is favorite.
+     */
+    public boolean contains(int type, long value) {
+        return mTypes[findSlot(type, value)] != 0;
+    }
+
+    /**
+     * Checks, if a program with a given primary identifier is favorite.
+     */
+    public boolean contains(@NonNull ProgramSelector.Identifier id) {
+        return contains(id.getType(), id.getValue());
+    }
+
+    /**
+     * Checks, if a given program is favorite.
+     */
+    public boolean contains(@NonNull ProgramSelector selector) {
+        return contains(Objects.requireNonNull(selector).getPrimaryId());
+    }
+
+    /**
+     * Returns an unmodifiable list of favorites, in the database order.
+     */
+    public @NonNull List<Program> getPrograms() {
+        return mPrograms;
+    }
+
+    /**
+     * Returns an unmodifiable set of favorites.
+     */
+    public @NonNull Set<Program> getProgramSet() {
+        return mProgramSet;
+    }
+
+    /**
+     * Returns the number of favorites.
+     */
+    public int size() {
+        return mPrograms.size();
+    }
+}
@@ -20,22 +20,93 @@ import android.hardware.radio.ProgramSelector;
 import android.net.Uri;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.room.TypeConverter;
 
 import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
 
-import java.util.Objects;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts {@link ProgramSelector} to and from its compact binary database representation.
+ * The same representation is used for program list snapshots.
+ *
+ * The selector is stored as a sequence of big-endian longs: a header (format version, program
+ * type, number of secondary and vendor identifiers), primary identifier type and value,
+ * secondary identifiers types and values, and vendor identifiers.
+ */
+public class ProgramSelectorConverter {
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_ID_COUNT = 0xFFFF;
 
-class ProgramSelectorConverter {
     @TypeConverter
     @NonNull
-    public static ProgramSelector toSelector(@NonNull String uri) {
-        return Objects.requireNonNull(ProgramSelectorExt.fromUri(Uri.parse(uri)));
+    public static ProgramSelector toSelector(@NonNull byte[] blob) {
+        ByteBuffer buf = ByteBuffer.wrap(blob);
+        try {
+            long header = buf.getLong();
+            int version = (int) (header >>> 56);
+            if (version != FORMAT_VERSION) {
+                throw new IllegalArgumentException("Unsupported selector format " + version);
+            }
+            int programType = (int) ((header >>> 32) & 0xFFFFFF);
+            int secondaryCount = (int) ((header >>> 16) & MAX_ID_COUNT);
+            int vendorCount = (int) (header & MAX_ID_COUNT);
+
+            ProgramSelector.Identifier primaryId = readIdentifier(buf);
+            ProgramSelector.Identifier[] secondaryIds =
+                    new ProgramSelector.Identifier[secondaryCount];
+            for (int i = 0; i < secondaryCount; i++) secondaryIds[i] = readIdentifier(buf);
+            long[] vendorIds = new long[vendorCount];
+            for (int i = 0; i < vendorCount; i++) vendorIds[i] = buf.getLong();
+            if (buf.hasRemaining()) throw new IllegalArgumentException("Trailing selector data");
+
+            return new ProgramSelector(programType, primaryId, secondaryIds, vendorIds);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated selector data", e);
+        }
     }
 
     @TypeConverter
     @NonNull
-    public static String toString(@NonNull ProgramSelector sel) {
-        return ProgramSelectorExt.toUri(sel).toString();
+    public static byte[] toBlob(@NonNull ProgramSelector sel) {
+        ProgramSelector.Identifier[] secondaryIds = sel.getSecondaryIds();
+        long[] vendorIds = sel.getVendorIds();
+        if (secondaryIds.length > MAX_ID_COUNT || vendorIds.length > MAX_ID_COUNT) {
+            throw new IllegalArgumentException("Too many identifiers: " + sel);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(Long.BYTES
+                * (3 + 2 * secondaryIds.length + vendorIds.length));
+        buf.putLong(((long) FORMAT_VERSION << 56)
+                | (((long) sel.getProgramType() & 0xFFFFFF) << 32)
+                | ((long) secondaryIds.length << 16)
+                | vendorIds.length);
+        writeIdentifier(buf, sel.getPrimaryId());
+        for (ProgramSelector.Identifier id : secondaryIds) writeIdentifier(buf, id);
+        for (long vendorId : vendorIds) buf.putLong(vendorId);
+        return buf.array();
+    }
+
+    private static void writeIdentifier(@NonNull ByteBuffer buf,
+            @NonNull ProgramSelector.Identifier id) {
+        buf.putLong(id.getType());
+        buf.putLong(id.getValue());
+    }
+
+    private static @NonNull ProgramSelector.Identifier readIdentifier(@NonNull ByteBuffer buf) {
+        int type = (int) buf.getLong();
+        return new ProgramSelector.Identifier(type, buf.getLong());
+    }
+
+    /**
+     * Parses selector in the legacy (database version 1) URI format.
+     *
+     * @return Parsed selector, or {@code null} if it's malformed
+     */
+    @Nullable
+    static ProgramSelector fromLegacyUri(@NonNull String uri) {
+        return ProgramSelectorExt.fromUri(Uri.parse(uri));
     }
 }
@@ -16,10 +16,14 @@
 
 package com.android.car.radio.storage;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
 import android.hardware.radio.ProgramSelector;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Transformations;
@@ -31,8 +35,11 @@ import androidx.room.Query;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import com.android.car.broadcastradio.support.Program;
+import com.android.car.radio.util.Log;
 
 import java.util.List;
 import java.util.stream.Collectors;
@@ -43,14 +50,61 @@ import java.util.stream.Collectors;
  * This class should not be accessed directly.
  * Instead, {@link RadioStorage} interfaces directly with it.
  */
-@Database(entities = {Favorite.class}, exportSchema = false, version = 1)
+@Database(entities = {Favorite.class}, exportSchema = true, version = 2)
 @TypeConverters({ProgramSelectorConverter.class})
 abstract class RadioDatabase extends RoomDatabase {
+    private static final String TAG = "BcRadioApp.storage";
+
+    /**
+     * Version 2 stores selectors in a binary form instead of URI strings and adds user-defined
+     * ordering of favorites. The existing order (by primary identifier) is kept.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE `Favorite_v2` (`selector` BLOB NOT NULL, "
+                    + "`name` TEXT NOT NULL, `position` INTEGER NOT NULL, "
+                    + "`primaryId_type` INTEGER NOT NULL, `primaryId_value` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`primaryId_type`, `primaryId_value`))");
+
+            int position = 0;
+            try (Cursor cursor = db.query("SELECT primaryId_type, primaryId_value, selector, name "
+                    + "FROM Favorite ORDER BY primaryId_type, primaryId_value")) {
+                while (cursor.moveToNext()) {
+                    ProgramSelector sel =
+                            ProgramSelectorConverter.fromLegacyUri(cursor.getString(2));
+                    if (sel == null) {
+                        Log.w(TAG, "Dropping malformed favorite " + cursor.getString(2));
+                        continue;
+                    }
+                    ContentValues values = new ContentValues();
+                    values.put("primaryId_type", cursor.getInt(0));
+                    values.put("primaryId_value", cursor.getLong(1));
+                    values.put("selector", ProgramSelectorConverter.toBlob(sel));
+                    values.put("name", cursor.getString(3));
+                    values.put("position", position++);
+                    db.insert("Favorite_v2", SQLiteDatabase.CONFLICT_REPLACE, values);
+                }
+            }
+
+            db.execSQL("DROP TABLE `Favorite`");
+            db.execSQL("ALTER TABLE `Favorite_v2` RENAME TO `Favorite`");
+        }
+    };
+
     @Dao
     protected interface FavoriteDao {
-        @Query("SELECT * FROM Favorite ORDER BY primaryId_type, primaryId_value")
+        @Query("SELECT * FROM Favorite ORDER BY position, primaryId_type, primaryId_value")
         LiveData<List<Favorite>> loadAll();
 
+        @Query("SELECT position FROM Favorite WHERE "
+                + "primaryId_type = :primaryIdType AND primaryId_value = :primaryIdValue")
+        @Nullable
+        Integer getPosition(int primaryIdType, long primaryIdValue);
+
+        @Query("SELECT COALESCE(MAX(position) + 1, 0) FROM Favorite")
+        int getNextPosition();
+
         @Insert(onConflict = OnConflictStrategy.REPLACE)
         void insertAll(Favorite... favorites);
 
@@ -67,11 +121,13 @@ abstract class RadioDatabase extends RoomDatabase {
 
     public static RadioDatabase buildInstance(Context context) {
         return Room.databaseBuilder(context.getApplicationContext(),
-                RadioDatabase.class, RadioDatabase.class.getSimpleName()).build();
+                RadioDatabase.class, RadioDatabase.class.getSimpleName())
+                .addMigrations(MIGRATION_1_2)
+                .build();
     }
 
     /**
-     * Returns a list of all user stored radio favorites sorted by primary identifier.
+     * Returns a list of all user stored radio favorites in the user-defined order.
      */
     @WorkerThread
     @NonNull
@@ -84,11 +140,18 @@ abstract class RadioDatabase extends RoomDatabase {
      * Saves a given {@link Program} as a favorite.
      *
      * The favorite will replace any existing entry for a given primary
-     * identifier if there is a conflict.
+     * identifier if there is a conflict, keeping its position. New favorites are
+     * added at the end of the list.
      */
     @WorkerThread
     public void insertFavorite(@NonNull Program favorite) {
-        favoriteDao().insertAll(new Favorite(favorite));
+        runInTransaction(() -> {
+            FavoriteDao dao = favoriteDao();
+            ProgramSelector.Identifier id = favorite.getSelector().getPrimaryId();
+            Integer position = dao.getPosition(id.getType(), id.getValue());
+            dao.insertAll(new Favorite(favorite,
+                    position != null ? position : dao.getNextPosition()));
+        });
     }
 
     /**
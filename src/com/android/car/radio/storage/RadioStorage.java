@@ -20,19 +20,26 @@ import android.content.Context;
 import android.content.SharedPreferences;
 import android.hardware.radio.ProgramSelector;
 import android.net.Uri;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Transformations;
 
 import com.android.car.broadcastradio.support.Program;
 import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
 import com.android.car.radio.bands.ProgramType;
 import com.android.car.radio.util.Log;
+import com.android.internal.annotations.GuardedBy;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Manages persistent storage for broadcast radio application.
@@ -44,17 +51,43 @@ public class RadioStorage {
     private static final String PREF_KEY_RECENT_TYPE = "recentProgramType";
     private static final String PREF_KEY_RECENT_PROGRAM_PREFIX = "recentProgram-";
 
+    // delay of persisting recently selected program, to batch frequent changes
+    private static final long RECENT_WRITE_DELAY_MS = 2000;
+    // how long favorites mutations are collected, before they are written in one transaction
+    private static final long FAVORITES_BATCH_WINDOW_MS = 100;
+
     private static RadioStorage sInstance;
 
     private final SharedPreferences mPrefs;
     private final RadioDatabase mDatabase;
-    private final LiveData<List<Program>> mFavorites;
+    private final LiveData<FavoritesSnapshot> mFavorites;
+
+    private final HandlerThread mWriterThread = new HandlerThread("BcRadioApp.storage");
+    private final Handler mWriterHandler;
+    private final Runnable mWriteRecentRunnable = () -> writeRecentlySelected(false);
+    private final Runnable mWriteFavoritesRunnable = this::writeFavorites;
+
+    private final Object mFavoritesLock = new Object();
+    @GuardedBy("mFavoritesLock")
+    private List<FavoriteMutation> mPendingFavorites = new ArrayList<>();
+
+    private final Object mRecentLock = new Object();
+    @GuardedBy("mRecentLock")
+    @Nullable private ProgramSelector mRecentSelector;
+    // program type ID -> recently selected program of that type, not yet persisted
+    @GuardedBy("mRecentLock")
+    private final SparseArray<ProgramSelector> mPendingRecent = new SparseArray<>();
+    @GuardedBy("mRecentLock")
+    private int mPendingRecentType = -1;
 
     private RadioStorage(Context context) {
         mPrefs = context.getSharedPreferences(PREF_NAME, Context.MODE_PRIVATE);
         mDatabase = RadioDatabase.buildInstance(context);
 
-        mFavorites = mDatabase.getAllFavorites();
+        mFavorites = Transformations.map(mDatabase.getAllFavorites(), FavoritesSnapshot::new);
+
+        mWriterThread.start();
+        mWriterHandler = new Handler(mWriterThread.getLooper());
     }
 
     /**
@@ -70,105 +103,187 @@ public class RadioStorage {
     }
 
     /**
-     * Returns a list of all favorites added previously by the user.
+     * Returns a snapshot of all favorites added previously by the user.
+     *
+     * A single snapshot instance is published per database change, so all observers share its
+     * membership index.
      */
     @NonNull
-    public LiveData<List<Program>> getFavorites() {
+    public LiveData<FavoritesSnapshot> getFavorites() {
         return mFavorites;
     }
 
-    /**
-     * Checks, if a given program is favorite.
-     *
-     * @param favorites List of favorites.
-     * @param selector Program to check.
-     */
-    public static boolean isFavorite(@NonNull List<Program> favorites,
-            @NonNull ProgramSelector selector) {
-        return favorites.contains(new Program(selector, ""));
-    }
-
     /**
      * Checks, if a given program is favorite.
      *
      * @param selector Program to check.
      */
     public boolean isFavorite(@NonNull ProgramSelector selector) {
-        List<Program> favorites = mFavorites.getValue();
+        FavoritesSnapshot favorites = mFavorites.getValue();
         if (favorites == null) {
             Log.w(TAG, "Database is not ready yet");
             return false;
         }
-        return isFavorite(favorites, selector);
+        return favorites.contains(selector);
     }
 
-    private class AddFavoriteTask extends AsyncTask<Program, Void, Void> {
-        @Override
-        protected Void doInBackground(Program... programs) {
-            mDatabase.insertFavorite(programs[0]);
-            return null;
+    /**
+     * Pending change to the favorites list.
+     */
+    private static final class FavoriteMutation {
+        public final Consumer<RadioDatabase> operation;
+        public final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        FavoriteMutation(@NonNull Consumer<RadioDatabase> operation) {
+            this.operation = operation;
         }
     }
 
-    private class RemoveFavoriteTask extends AsyncTask<ProgramSelector, Void, Void> {
-        @Override
-        protected Void doInBackground(ProgramSelector... selectors) {
-            mDatabase.removeFavorite(selectors[0]);
-            return null;
+    private @NonNull CompletableFuture<Void> enqueueFavoriteMutation(
+            @NonNull Consumer<RadioDatabase> operation) {
+        FavoriteMutation mutation = new FavoriteMutation(operation);
+        synchronized (mFavoritesLock) {
+            mPendingFavorites.add(mutation);
+            // a single drain handles all mutations queued until it starts
+            if (mPendingFavorites.size() == 1) {
+                mWriterHandler.postDelayed(mWriteFavoritesRunnable, FAVORITES_BATCH_WINDOW_MS);
+            }
         }
+        return mutation.result;
+    }
+
+    private void writeFavorites() {
+        List<FavoriteMutation> batch;
+        synchronized (mFavoritesLock) {
+            batch = mPendingFavorites;
+            mPendingFavorites = new ArrayList<>();
+        }
+        if (batch.isEmpty()) return;
+
+        // one transaction per batch, so the favorites LiveData is refreshed only once
+        try {
+            mDatabase.runInTransaction(() -> {
+                for (FavoriteMutation mutation : batch) mutation.operation.accept(mDatabase);
+            });
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Failed to update favorites", e);
+            for (FavoriteMutation mutation : batch) mutation.result.completeExceptionally(e);
+            return;
+        }
+        for (FavoriteMutation mutation : batch) mutation.result.complete(null);
     }
 
     /**
      * Adds a new program to the favorites list.
      *
      * After the operation succeeds, the list is refreshed via live object returned
-     * from {@link #getFavorites}.
+     * from {@link #getFavorites}. Mutations requested in a quick succession are written
+     * in a single transaction.
      *
      * @param favorite A program to add.
+     * @return Future completed when the change is written to the database.
      */
-    public void addFavorite(@NonNull Program favorite) {
-        new AddFavoriteTask().execute(Objects.requireNonNull(favorite));
+    public @NonNull CompletableFuture<Void> addFavorite(@NonNull Program favorite) {
+        Objects.requireNonNull(favorite);
+        return enqueueFavoriteMutation(db -> db.insertFavorite(favorite));
     }
 
     /**
      * Removes a program from the favorites list.
      *
      * After the operation succeeds, the list is refreshed via live object returned
-     * from {@link #getFavorites}.
+     * from {@link #getFavorites}. Mutations requested in a quick succession are written
+     * in a single transaction.
      *
      * @param favorite A program to remove.
+     * @return Future completed when the change is written to the database.
      */
-    public void removeFavorite(@NonNull ProgramSelector favorite) {
-        new RemoveFavoriteTask().execute(Objects.requireNonNull(favorite));
+    public @NonNull CompletableFuture<Void> removeFavorite(@NonNull ProgramSelector favorite) {
+        Objects.requireNonNull(favorite);
+        return enqueueFavoriteMutation(db -> db.removeFavorite(favorite));
     }
 
     /**
      * Stores recently selected program so it can be recalled on next app launch.
      *
+     * This is cheap to call on every program info change: repeated calls for the same program
+     * return early and the program is persisted in the background, with a delay.
+     * See {@link #flushRecentlySelected}.
+     *
      * @param sel Program to store as recently selected.
      */
     public void setRecentlySelected(@NonNull ProgramSelector sel) {
-        ProgramType pt = ProgramType.fromSelector(sel);
-        int ptid = pt == null ? 0 : pt.id;
+        synchronized (mRecentLock) {
+            // secondary IDs (e.g. RDS PI code) may arrive later for the same primary ID
+            if (sel.equals(mRecentSelector)) return;
+            mRecentSelector = sel;
+
+            ProgramType pt = ProgramType.fromSelector(sel);
+            int ptid = pt == null ? 0 : pt.id;
+            mPendingRecent.put(ptid, sel);
+            mPendingRecentType = ptid;
+
+            mWriterHandler.removeCallbacks(mWriteRecentRunnable);
+            mWriterHandler.postDelayed(mWriteRecentRunnable, RECENT_WRITE_DELAY_MS);
+        }
+    }
+
+    /**
+     * Persists recently selected program immediately, if there is a pending change.
+     *
+     * Must be called before the process goes away, i.e. when the service is destroyed.
+     */
+    public void flushRecentlySelected() {
+        mWriterHandler.removeCallbacks(mWriteRecentRunnable);
+        writeRecentlySelected(true);
+    }
+
+    private void writeRecentlySelected(boolean sync) {
+        SparseArray<ProgramSelector> pending;
+        int ptid;
+        synchronized (mRecentLock) {
+            if (mPendingRecent.size() == 0) return;
+            pending = mPendingRecent.clone();
+            ptid = mPendingRecentType;
+        }
 
         SharedPreferences.Editor editor = mPrefs.edit();
         boolean hasChanges = false;
 
-        String prefName = PREF_KEY_RECENT_PROGRAM_PREFIX + ptid;
-        Uri selUri = ProgramSelectorExt.toUri(sel);
-        if (selUri == null) return;
-        String selUriStr = selUri.toString();
-        if (!mPrefs.getString(prefName, "").equals(selUriStr)) {
-            editor.putString(prefName, selUriStr);
-            hasChanges = true;
+        for (int i = 0; i < pending.size(); i++) {
+            String prefName = PREF_KEY_RECENT_PROGRAM_PREFIX + pending.keyAt(i);
+            Uri selUri = ProgramSelectorExt.toUri(pending.valueAt(i));
+            if (selUri == null) continue;
+            String selUriStr = selUri.toString();
+            if (!mPrefs.getString(prefName, "").equals(selUriStr)) {
+                editor.putString(prefName, selUriStr);
+                hasChanges = true;
+            }
         }
 
-        if (mPrefs.getInt(PREF_KEY_RECENT_TYPE, -1) != ptid) {
+        if (ptid != -1 && mPrefs.getInt(PREF_KEY_RECENT_TYPE, -1) != ptid) {
             editor.putInt(PREF_KEY_RECENT_TYPE, ptid);
             hasChanges = true;
         }
 
-        if (hasChanges) editor.apply();
+        if (hasChanges) {
+            if (sync) {
+                editor.commit();
+            } else {
+                editor.apply();
+            }
+        }
+
+        /* Both commit() and apply() update the in-memory preferences before returning, so only
+         * now getRecentlySelected can read the written values. Programs selected while writing
+         * stay pending. */
+        synchronized (mRecentLock) {
+            for (int i = 0; i < pending.size(); i++) {
+                int key = pending.keyAt(i);
+                if (mPendingRecent.get(key) == pending.valueAt(i)) mPendingRecent.remove(key);
+            }
+            if (mPendingRecent.get(mPendingRecentType) == null) mPendingRecentType = -1;
+        }
     }
 
     /**
@@ -181,6 +296,12 @@ public class RadioStorage {
      * @return Selector of the recent program or {@code null}, if there was none saved
      */
     public @Nullable ProgramSelector getRecentlySelected(@Nullable ProgramType pt) {
+        synchronized (mRecentLock) {
+            int pendingType = pt != null ? pt.id : mPendingRecentType;
+            ProgramSelector pending = mPendingRecent.get(pendingType);
+            if (pending != null) return pending;
+        }
+
         int ptid = pt != null ? pt.id : mPrefs.getInt(PREF_KEY_RECENT_TYPE, -1);
         if (ptid == -1) return null;
 
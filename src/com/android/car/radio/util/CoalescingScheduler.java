@@ -0,0 +1,141 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.util;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.Objects;
+
+/**
+ * Coalesces bursts of events into a single trailing-edge flush on a given {@link Handler}.
+ *
+ * Every call to {@link #schedule} postpones the flush until no new events arrived within the
+ * coalescing window, but never for longer than the maximum latency since the first event that
+ * is still pending.
+ */
+public class CoalescingScheduler {
+    private final Object mLock = new Object();
+    private final Handler mHandler;
+    private final Runnable mFlushAction;
+    private final long mWindowMs;
+    private final long mMaxLatencyMs;
+
+    private final Runnable mFlushRunnable = this::onFlush;
+
+    @GuardedBy("mLock")
+    private boolean mIsPending;
+    @GuardedBy("mLock")
+    private long mFirstPendingTime;
+    @GuardedBy("mLock")
+    private long mCoalescedCount;
+    @GuardedBy("mLock")
+    private long mFlushedCount;
+
+    /**
+     * @param handler Handler to run the flush action on
+     * @param windowMs Quiet period after the last event, before the flush happens
+     * @param maxLatencyMs Maximum delay between the first pending event and the flush
+     * @param flushAction Action to run when pending events are flushed
+     */
+    public CoalescingScheduler(@NonNull Handler handler, long windowMs, long maxLatencyMs,
+            @NonNull Runnable flushAction) {
+        if (windowMs < 0) throw new IllegalArgumentException("windowMs must not be negative");
+        if (maxLatencyMs < windowMs) {
+            throw new IllegalArgumentException("maxLatencyMs must not be less than windowMs");
+        }
+        mHandler = Objects.requireNonNull(handler);
+        mFlushAction = Objects.requireNonNull(flushAction);
+        mWindowMs = windowMs;
+        mMaxLatencyMs = maxLatencyMs;
+    }
+
+    /**
+     * Notifies about a new event, scheduling (or postponing) the flush.
+     */
+    public void schedule() {
+        synchronized (mLock) {
+            long now = SystemClock.uptimeMillis();
+            if (mIsPending) {
+                mCoalescedCount++;
+            } else {
+                mIsPending = true;
+                mFirstPendingTime = now;
+            }
+            long deadline = Math.min(now + mWindowMs, mFirstPendingTime + mMaxLatencyMs);
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.postAtTime(mFlushRunnable, deadline);
+        }
+    }
+
+    /**
+     * Flushes without waiting for the coalescing window, even if no events are pending.
+     *
+     * The flush still runs on the handler, so it never races with a scheduled one.
+     */
+    public void flushNow() {
+        synchronized (mLock) {
+            if (!mIsPending) {
+                mIsPending = true;
+                mFirstPendingTime = SystemClock.uptimeMillis();
+            }
+            mHandler.removeCallbacks(mFlushRunnable);
+            mHandler.post(mFlushRunnable);
+        }
+    }
+
+    /**
+     * Drops pending events without flushing them.
+     */
+    public void cancel() {
+        synchronized (mLock) {
+            mIsPending = false;
+            mHandler.removeCallbacks(mFlushRunnable);
+        }
+    }
+
+    private void onFlush() {
+        synchronized (mLock) {
+            if (!mIsPending) return;
+            mIsPending = false;
+            mFlushedCount++;
+        }
+        mFlushAction.run();
+    }
+
+    /**
+     * Returns the number of events that were merged into an already pending flush.
+     */
+    public long getCoalescedCount() {
+        synchronized (mLock) {
+            return mCoalescedCount;
+        }
+    }
+
+    /**
+     * Returns the number of flushes performed so far.
+     */
+    public long getFlushedCount() {
+        synchronized (mLock) {
+            return mFlushedCount;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies, with power-of-two microsecond buckets.
+ *
+ * Recording a sample is a few atomic increments, so it's cheap enough to be always enabled.
+ * Bucket {@code i} holds samples in range {@code [2^(i-1), 2^i)} microseconds, with bucket 0
+ * holding samples under 1us and the last bucket holding all samples that don't fit elsewhere.
+ * Readers may observe a sample that is only partially recorded, which is fine for statistics.
+ */
+public class LatencyHistogram {
+    /** Number of buckets; the last one starts at about 33 seconds. */
+    public static final int BUCKET_COUNT = 27;
+
+    private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong mCount = new AtomicLong();
+    private final AtomicLong mSumUs = new AtomicLong();
+    private final AtomicLong mMaxUs = new AtomicLong();
+
+    private static int getBucket(long us) {
+        return Math.min(64 - Long.numberOfLeadingZeros(us), BUCKET_COUNT - 1);
+    }
+
+    /**
+     * Returns the (exclusive) upper bound of a given bucket, in microseconds.
+     */
+    private static long getBucketLimitUs(int bucket) {
+        return 1L << bucket;
+    }
+
+    /**
+     * Records a single sample.
+     *
+     * @param us Latency in microseconds; negative values are treated as zero
+     */
+    public void record(long us) {
+        if (us < 0) us = 0;
+        mBuckets.incrementAndGet(getBucket(us));
+        mSumUs.addAndGet(us);
+        mCount.incrementAndGet();
+
+        long max = mMaxUs.get();
+        while (us > max && !mMaxUs.compareAndSet(max, us)) {
+            max = mMaxUs.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded samples.
+     */
+    public long getCount() {
+        return mCount.get();
+    }
+
+    /**
+     * Returns the mean latency, in microseconds.
+     */
+    public long getMeanUs() {
+        long count = mCount.get();
+        return (count == 0) ? 0 : mSumUs.get() / count;
+    }
+
+    /**
+     * Returns the maximum recorded latency, in microseconds.
+     */
+    public long getMaxUs() {
+        return mMaxUs.get();
+    }
+
+    /**
+     * Returns an upper estimate of a given percentile, in microseconds.
+     *
+     * @param percentile Percentile, in range (0, 100]
+     * @return Upper bound of the bucket holding the percentile, capped at the maximum sample
+     */
+    public long getPercentileUs(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile: " + percentile);
+        }
+        long total = 0;
+        long[] buckets = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = mBuckets.get(i);
+            total += buckets[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT - 1; i++) {
+            seen += buckets[i];
+            if (seen >= rank) return Math.min(getBucketLimitUs(i), mMaxUs.get());
+        }
+        return mMaxUs.get();
+    }
+
+    @Override
+    @NonNull
+    public String toString() {
+        long count = getCount();
+        if (count == 0) return "n=0";
+        return "n=" + count + ", mean=" + formatUs(getMeanUs())
+                + ", p50<=" + formatUs(getPercentileUs(50))
+                + ", p90<=" + formatUs(getPercentileUs(90))
+                + ", p99<=" + formatUs(getPercentileUs(99))
+                + ", max=" + formatUs(getMaxUs());
+    }
+
+    private static String formatUs(long us) {
+        if (us < 1000) return us + "us";
+        return (us / 1000) + "." + (us % 1000 / 100) + "ms";
+    }
+}
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.util;
+
+import android.os.Trace;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Systrace/Perfetto markers for the tune and program info paths.
+ *
+ * Section names are constant strings, so a disabled trace costs a single flag check. All radio
+ * sections are prefixed with {@code "Radio."}, so they are easy to filter.
+ */
+public final class RadioTrace {
+    private static final AtomicInteger sNextCookie = new AtomicInteger(1);
+
+    private RadioTrace() {}
+
+    /**
+     * Begins a synchronous section; it must be ended with {@link #end} on the same thread.
+     */
+    public static void begin(@NonNull String section) {
+        Trace.beginSection(section);
+    }
+
+    /**
+     * Ends the most recent section begun on the current thread.
+     */
+    public static void end() {
+        Trace.endSection();
+    }
+
+    /**
+     * Generates a cookie identifying a single asynchronous operation.
+     */
+    public static int newCookie() {
+        return sNextCookie.getAndIncrement();
+    }
+
+    /**
+     * Begins an asynchronous section, which may end on a different thread.
+     */
+    public static void beginAsync(@NonNull String section, int cookie) {
+        Trace.beginAsyncSection(section, cookie);
+    }
+
+    /**
+     * Ends an asynchronous section with a given name and cookie.
+     */
+    public static void endAsync(@NonNull String section, int cookie) {
+        Trace.endAsyncSection(section, cookie);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.util;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Helpers for lists kept in a given order.
+ */
+public final class SortedLists {
+    private SortedLists() {}
+
+    /**
+     * Merges new items into a sorted list of retained ones.
+     *
+     * Only the new items are sorted (in place); the merge itself is linear.
+     */
+    @NonNull
+    public static <T> List<T> mergeSorted(@NonNull List<T> retained, @NonNull List<T> added,
+            @NonNull Comparator<? super T> order) {
+        added.sort(order);
+
+        List<T> merged = new ArrayList<>(retained.size() + added.size());
+        int r = 0;
+        int a = 0;
+        while (r < retained.size() || a < added.size()) {
+            if (a == added.size() || (r < retained.size()
+                    && order.compare(retained.get(r), added.get(a)) <= 0)) {
+                merged.add(retained.get(r++));
+            } else {
+                merged.add(added.get(a++));
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.util;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records durations of consecutive stages of a multi-step operation, like service startup.
+ *
+ * Stages may be marked from different threads; each stage lasts from the previous mark (or timer
+ * creation) until its own mark.
+ */
+public class StageTimer {
+    private final Object mLock = new Object();
+    private final String mName;
+
+    private final long mStartTime = SystemClock.elapsedRealtime();
+    @GuardedBy("mLock")
+    private long mLastMarkTime = mStartTime;
+    @GuardedBy("mLock")
+    private final List<String> mStages = new ArrayList<>();
+    @GuardedBy("mLock")
+    private final List<Long> mDurations = new ArrayList<>();
+
+    /**
+     * @param name Name of the timed operation, for logging.
+     */
+    public StageTimer(@NonNull String name) {
+        mName = name;
+    }
+
+    /**
+     * Marks the end of a given stage.
+     *
+     * @return Duration of the stage, in milliseconds
+     */
+    public long mark(@NonNull String stage) {
+        synchronized (mLock) {
+            long now = SystemClock.elapsedRealtime();
+            long duration = now - mLastMarkTime;
+            mLastMarkTime = now;
+            mStages.add(stage);
+            mDurations.add(duration);
+            return duration;
+        }
+    }
+
+    /**
+     * Returns the time elapsed from timer creation to the last mark, in milliseconds.
+     */
+    public long getTotalMs() {
+        synchronized (mLock) {
+            return mLastMarkTime - mStartTime;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            StringBuilder sb = new StringBuilder(mName).append(": total=")
+                    .append(mLastMarkTime - mStartTime).append("ms");
+            for (int i = 0; i < mStages.size(); i++) {
+                sb.append(", ").append(mStages.get(i)).append('=')
+                        .append(mDurations.get(i)).append("ms");
+            }
+            return sb.toString();
+        }
+    }
+}
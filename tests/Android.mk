@@ -0,0 +1,53 @@
+#
+# Copyright (C) 2019 The Android Open Source Project
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#      http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+LOCAL_PATH := $(call my-dir)
+
+# On-device tests and benchmarks of the radio app, run in the app's process. Run with:
+#
+#   atest CarRadioAppTests
+
+include $(CLEAR_VARS)
+
+LOCAL_PACKAGE_NAME := CarRadioAppTests
+
+LOCAL_MODULE_TAGS := tests
+
+LOCAL_SRC_FILES := $(call all-java-files-under, src)
+
+LOCAL_PRIVATE_PLATFORM_APIS := true
+
+LOCAL_CERTIFICATE := platform
+
+LOCAL_INSTRUMENTATION_FOR := CarRadioApp
+
+LOCAL_JAVA_LIBRARIES := \
+    android.car \
+    android.test.base \
+    android.test.runner
+
+LOCAL_STATIC_JAVA_LIBRARIES := \
+    androidx.room_room-testing \
+    androidx.test.rules \
+    apct-perftests-utils \
+    junit
+
+# MigrationTestHelper reads the exported database schemas from assets.
+LOCAL_ASSET_DIR := $(LOCAL_PATH)/../schemas
+
+LOCAL_COMPATIBILITY_SUITE := device-tests
+
+include $(BUILD_PACKAGE)
@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.platform;
+
+import android.content.Context;
+import android.hardware.radio.RadioManager.BandDescriptor;
+import android.hardware.radio.RadioTuner;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Fake {@link RadioManagerExt} with a single FM module, backed by {@link FakeRadioTuner}.
+ */
+public class FakeRadioManager extends RadioManagerExt {
+    private final Context mContext;
+    private final HandlerThread mDispatchThread = new HandlerThread("FakeRadioManager.dispatch");
+
+    public FakeRadioManager(@NonNull Context context) {
+        super(context, null);
+        mContext = Objects.requireNonNull(context);
+        mDispatchThread.start();
+    }
+
+    @Override
+    public boolean hasBackgroundScanModule() {
+        return false;
+    }
+
+    @Override
+    public @Nullable RadioTunerExt openSession(@ModuleRole int role,
+            RadioTuner.Callback callback, Handler handler) {
+        if (role != ROLE_FOREGROUND) return null;
+        if (handler == null) handler = new Handler(mDispatchThread.getLooper());
+        TunerCallbackAdapterExt cbExt = new TunerCallbackAdapterExt(callback, handler);
+
+        // there is no tuner audio device to route, so unmuting always succeeds
+        return new RadioTunerExt(mContext, new FakeRadioTuner(cbExt), cbExt, false) {
+            @Override
+            public boolean setMuted(boolean muted) {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public @Nullable List<BandDescriptor> getAmFmRegionConfig() {
+        return Collections.singletonList(FakeRadioTuner.FM_BAND);
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.platform;
+
+import android.graphics.Bitmap;
+import android.hardware.radio.ProgramSelector;
+import android.hardware.radio.RadioManager;
+import android.hardware.radio.RadioManager.FmBandDescriptor;
+import android.hardware.radio.RadioMetadata;
+import android.hardware.radio.RadioTuner;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.internal.annotations.GuardedBy;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Fake FM tuner, answering tune, seek and step requests asynchronously, like the HAL does.
+ *
+ * Every channel of the band is a valid station, so seek and step behave the same.
+ */
+class FakeRadioTuner extends RadioTuner {
+    static final FmBandDescriptor FM_BAND = new FmBandDescriptor(RadioManager.REGION_ITU_1,
+            RadioManager.BAND_FM, 87500, 108000, 100, true, true, true, true, true);
+
+    private final Object mLock = new Object();
+    private final RadioTuner.Callback mCallback;
+    private final HandlerThread mHalThread = new HandlerThread("FakeRadioTuner.hal");
+    private final Handler mHalHandler;
+
+    @GuardedBy("mLock")
+    private int mFrequency = FM_BAND.getLowerLimit();
+
+    FakeRadioTuner(@NonNull RadioTuner.Callback callback) {
+        mCallback = Objects.requireNonNull(callback);
+        mHalThread.start();
+        mHalHandler = new Handler(mHalThread.getLooper());
+    }
+
+    private void tuneTo(int frequency) {
+        synchronized (mLock) {
+            mFrequency = frequency;
+        }
+        ProgramSelector sel = ProgramSelectorExt.createAmFmSelector(frequency);
+        RadioManager.ProgramInfo info = new RadioManager.ProgramInfo(sel, sel.getPrimaryId(),
+                sel.getPrimaryId(), null, 0, 100, new RadioMetadata.Builder().build(), null);
+        mHalHandler.post(() -> mCallback.onProgramInfoChanged(info));
+    }
+
+    private int moveBy(int direction) {
+        int frequency;
+        synchronized (mLock) {
+            frequency = mFrequency + (direction == DIRECTION_UP ? 1 : -1) * FM_BAND.getSpacing();
+        }
+        if (frequency > FM_BAND.getUpperLimit()) frequency = FM_BAND.getLowerLimit();
+        if (frequency < FM_BAND.getLowerLimit()) frequency = FM_BAND.getUpperLimit();
+        tuneTo(frequency);
+        return RadioManager.STATUS_OK;
+    }
+
+    @Override
+    public void tune(@NonNull ProgramSelector selector) {
+        tuneTo((int) selector.getFirstId(ProgramSelector.IDENTIFIER_TYPE_AMFM_FREQUENCY));
+    }
+
+    @Override
+    public int tune(int channel, int subChannel) {
+        tuneTo(channel);
+        return RadioManager.STATUS_OK;
+    }
+
+    @Override
+    public int step(int direction, boolean skipSubChannel) {
+        return moveBy(direction);
+    }
+
+    @Override
+    public int scan(int direction, boolean skipSubChannel) {
+        return moveBy(direction);
+    }
+
+    @Override
+    public int cancel() {
+        return RadioManager.STATUS_OK;
+    }
+
+    @Override
+    public void close() {
+        mHalThread.quitSafely();
+    }
+
+    @Override
+    public int setConfiguration(RadioManager.BandConfig config) {
+        return RadioManager.STATUS_INVALID_OPERATION;
+    }
+
+    @Override
+    public int getConfiguration(RadioManager.BandConfig[] config) {
+        return RadioManager.STATUS_INVALID_OPERATION;
+    }
+
+    @Override
+    public int setMute(boolean mute) {
+        return RadioManager.STATUS_OK;
+    }
+
+    @Override
+    public boolean getMute() {
+        return false;
+    }
+
+    @Override
+    public void cancelAnnouncement() {}
+
+    @Override
+    public int getProgramInformation(RadioManager.ProgramInfo[] info) {
+        return RadioManager.STATUS_INVALID_OPERATION;
+    }
+
+    @Override
+    public @Nullable Bitmap getMetadataImage(int id) {
+        return null;
+    }
+
+    @Override
+    public boolean startBackgroundScan() {
+        return false;
+    }
+
+    @Override
+    public @NonNull List<RadioManager.ProgramInfo> getProgramList(
+            @Nullable Map<String, String> vendorFilter) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isAnalogForced() {
+        return false;
+    }
+
+    @Override
+    public void setAnalogForced(boolean isForced) {}
+
+    @Override
+    public boolean isAntennaConnected() {
+        return true;
+    }
+
+    @Override
+    public boolean hasControl() {
+        return true;
+    }
+}
@@ -0,0 +1,124 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.platform;
+
+import static org.junit.Assert.assertNotNull;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.annotation.Nullable;
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ImageMemoryCache} lookups of cached images, while other threads look up
+ * images at the same time, like the media session, browse tree and prefetcher do.
+ *
+ * All images are cached before measuring, so the lookups only contend on the cache lock,
+ * never wait for fetches.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class ImageMemoryCacheContentionTest {
+    private static final long TIMEOUT_MS = 5000;
+    private static final long MEMORY_BYTES = 8 * 1024 * 1024;
+    private static final int IMAGE_COUNT = 64;
+    private static final int IMAGE_DIMENSION = 96;  // fits thumbnails, so no variants are made
+    private static final int CONTENDER_COUNT = 4;
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private final List<Thread> mContenders = new ArrayList<>();
+    private volatile boolean mIsContending;
+    private ImageMemoryCache mCache;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        RadioManagerExt radioManager = new FakeRadioManager(context) {
+            @Override
+            public @Nullable Bitmap getMetadataImage(long globalId) {
+                return Bitmap.createBitmap(IMAGE_DIMENSION, IMAGE_DIMENSION,
+                        Bitmap.Config.ARGB_8888);
+            }
+        };
+        mCache = new ImageMemoryCache(context, radioManager, MEMORY_BYTES, 0, 0, 0);
+
+        for (int i = 1; i <= IMAGE_COUNT; i++) {
+            assertNotNull(mCache.resolveAsync(i).get(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mIsContending = false;
+        for (Thread contender : mContenders) contender.join(TIMEOUT_MS);
+        mCache.close();
+    }
+
+    private void startContenders() {
+        mIsContending = true;
+        for (int i = 0; i < CONTENDER_COUNT; i++) {
+            int offset = i;
+            Thread contender = new Thread(() -> {
+                int id = offset;
+                while (mIsContending) {
+                    mCache.resolve(id % IMAGE_COUNT + 1, ImageMemoryCache.SIZE_THUMBNAIL);
+                    mCache.isCached(id % IMAGE_COUNT + 1);
+                    id++;
+                }
+            }, "ImageMemoryCacheContentionTest.contender" + i);
+            mContenders.add(contender);
+            contender.start();
+        }
+    }
+
+    /* Looks up all cached images in turn. */
+    private void measureResolve() {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        int id = 0;
+        while (state.keepRunning()) {
+            mCache.resolve(id++ % IMAGE_COUNT + 1);
+        }
+    }
+
+    @Test
+    public void resolve_uncontended() {
+        measureResolve();
+    }
+
+    @Test
+    public void resolve_contended() {
+        startContenders();
+        measureResolve();
+    }
+}
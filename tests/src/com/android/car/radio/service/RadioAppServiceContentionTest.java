@@ -0,0 +1,212 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.content.Intent;
+import android.hardware.radio.RadioManager.ProgramInfo;
+import android.perftests.utils.BenchmarkState;
+import android.perftests.utils.PerfStatusReporter;
+
+import androidx.test.filters.LargeTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+import com.android.car.radio.platform.FakeRadioManager;
+import com.android.car.radio.platform.RadioManagerExt;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the tune round trip of {@link RadioAppService} running against a fake tuner, while
+ * {@link IRadioAppCallback} clients receive the resulting program info changes.
+ *
+ * Callbacks are called from a separate thread without holding any service lock, so the tune
+ * latency must not depend on the number of clients, nor on a client being stuck. Clients live
+ * in the same process, so their callbacks are direct calls, not oneway transactions: a stuck
+ * client blocks the callback thread, delaying the updates of the other clients. Only the tune
+ * round trip is measured here, not the update delivery.
+ */
+@RunWith(AndroidJUnit4.class)
+@LargeTest
+public class RadioAppServiceContentionTest {
+    private static final long TIMEOUT_MS = 5000;
+    private static final int CLIENT_COUNT = 16;
+    private static final int[] FREQUENCIES = {88500, 95300, 101100, 107900};
+
+    @Rule
+    public PerfStatusReporter mPerfStatusReporter = new PerfStatusReporter();
+
+    private final CountDownLatch mStuckClientRelease = new CountDownLatch(1);
+    private FakeRadioAppService mService;
+    private IRadioAppService mBinder;
+
+    /**
+     * {@link RadioAppService} running against {@link FakeRadioManager}.
+     */
+    public static class FakeRadioAppService extends RadioAppService {
+        @Override
+        RadioManagerExt createRadioManager() {
+            return new FakeRadioManager(this);
+        }
+
+        void attach(Context base) {
+            attachBaseContext(base);
+        }
+    }
+
+    private static class Client extends IRadioAppCallback.Stub {
+        // the initial state is delivered on registration, always including the playback state
+        final CountDownLatch mRegistered = new CountDownLatch(1);
+        final CountDownLatch mStarted = new CountDownLatch(1);
+
+        @Override
+        public void onStartupFinished(boolean succeeded) {
+            if (succeeded) mStarted.countDown();
+        }
+
+        @Override
+        public void onHardwareError() {}
+
+        @Override
+        public void onCurrentProgramChanged(ProgramInfo info) {}
+
+        @Override
+        public void onPlaybackStateChanged(int state) {
+            mRegistered.countDown();
+        }
+
+        @Override
+        public void onProgramListChanged(List<ProgramInfo> plist, boolean complete) {}
+
+        @Override
+        public void onProgramListDelta(List<ProgramInfo> modified, int[] removedIdTypes,
+                long[] removedIdValues, boolean complete) {}
+    }
+
+    private static class TuneResult extends ITuneCallback.Stub {
+        private final CountDownLatch mFinished = new CountDownLatch(1);
+        private volatile boolean mSucceeded;
+
+        @Override
+        public void onFinished(boolean succeeded) {
+            mSucceeded = succeeded;
+            mFinished.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return mFinished.await(TIMEOUT_MS, TimeUnit.MILLISECONDS) && mSucceeded;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mService = new FakeRadioAppService();
+        mService.attach(context);
+
+        IRadioAppService[] binder = new IRadioAppService[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            mService.onCreate();
+            binder[0] = IRadioAppService.Stub.asInterface(
+                    mService.onBind(new Intent(RadioAppService.ACTION_APP_SERVICE)));
+        });
+        mBinder = binder[0];
+
+        Client client = addClient(new Client());
+        assertTrue("Tuner session didn't open",
+                client.mStarted.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+    }
+
+    @After
+    public void tearDown() {
+        mStuckClientRelease.countDown();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(mService::onDestroy);
+    }
+
+    private Client addClient(Client client) throws Exception {
+        mBinder.addCallback(client);
+        return client;
+    }
+
+    private void addClients() throws Exception {
+        for (int i = 0; i < CLIENT_COUNT; i++) {
+            Client client = addClient(new Client());
+            assertTrue(client.mRegistered.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        }
+    }
+
+    /* Tunes through a few stations, waiting for every tune to finish. */
+    private void measureTune() throws Exception {
+        BenchmarkState state = mPerfStatusReporter.getBenchmarkState();
+        int i = 0;
+        while (state.keepRunning()) {
+            TuneResult result = new TuneResult();
+            mBinder.tune(ProgramSelectorExt.createAmFmSelector(
+                    FREQUENCIES[i++ % FREQUENCIES.length]), result);
+            assertTrue("Tune failed", result.await());
+        }
+    }
+
+    @Test
+    public void tune_oneClient() throws Exception {
+        measureTune();
+    }
+
+    @Test
+    public void tune_manyClients() throws Exception {
+        addClients();
+        measureTune();
+    }
+
+    @Test
+    public void tune_manyClientsAndStuckOne() throws Exception {
+        addClients();
+        CountDownLatch stuck = new CountDownLatch(1);
+        AtomicInteger stuckCalls = new AtomicInteger();
+        addClient(new Client() {
+            @Override
+            public void onCurrentProgramChanged(ProgramInfo info) {
+                stuckCalls.incrementAndGet();
+                stuck.countDown();
+                try {
+                    mStuckClientRelease.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(stuck.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        measureTune();
+
+        // the callback thread stayed blocked for the whole measurement
+        assertEquals(1, stuckCalls.get());
+    }
+}
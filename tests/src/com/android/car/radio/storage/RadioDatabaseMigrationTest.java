@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.car.radio.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.hardware.radio.ProgramSelector;
+
+import androidx.room.testing.MigrationTestHelper;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+import androidx.sqlite.db.framework.FrameworkSQLiteOpenHelperFactory;
+import androidx.test.filters.SmallTest;
+import androidx.test.platform.app.InstrumentationRegistry;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.car.broadcastradio.support.platform.ProgramSelectorExt;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Verifies {@link RadioDatabase} migrations against the exported schemas.
+ */
+@RunWith(AndroidJUnit4.class)
+@SmallTest
+public class RadioDatabaseMigrationTest {
+    private static final String TEST_DB = "RadioDatabaseMigrationTest";
+
+    private static final ProgramSelector FM_HIGH = ProgramSelectorExt.createAmFmSelector(107900);
+    private static final ProgramSelector FM_LOW = ProgramSelectorExt.createAmFmSelector(88500);
+
+    @Rule
+    public MigrationTestHelper mHelper = new MigrationTestHelper(
+            InstrumentationRegistry.getInstrumentation(),
+            RadioDatabase.class.getCanonicalName(), new FrameworkSQLiteOpenHelperFactory());
+
+    private static void insertV1(SupportSQLiteDatabase db, ProgramSelector sel, String name) {
+        ContentValues values = new ContentValues();
+        values.put("primaryId_type", sel.getPrimaryId().getType());
+        values.put("primaryId_value", sel.getPrimaryId().getValue());
+        values.put("selector", ProgramSelectorExt.toUri(sel).toString());
+        values.put("name", name);
+        db.insert("Favorite", SQLiteDatabase.CONFLICT_FAIL, values);
+    }
+
+    @Test
+    public void migrate1To2() throws Exception {
+        try (SupportSQLiteDatabase db = mHelper.createDatabase(TEST_DB, 1)) {
+            insertV1(db, FM_HIGH, "High");
+            insertV1(db, FM_LOW, "Low");
+        }
+
+        SupportSQLiteDatabase db = mHelper.runMigrationsAndValidate(TEST_DB, 2, true,
+                RadioDatabase.MIGRATION_1_2);
+
+        // the existing order by primary identifier becomes the user-defined order
+        try (Cursor cursor = db.query(
+                "SELECT selector, name, position FROM Favorite ORDER BY position")) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(FM_LOW, ProgramSelectorConverter.toSelector(cursor.getBlob(0)));
+            assertEquals("Low", cursor.getString(1));
+            assertEquals(0, cursor.getInt(2));
+
+            assertTrue(cursor.moveToNext());
+            assertEquals(FM_HIGH, ProgramSelectorConverter.toSelector(cursor.getBlob(0)));
+            assertEquals("High", cursor.getString(1));
+            assertEquals(1, cursor.getInt(2));
+
+            assertFalse(cursor.moveToNext());
+        }
+    }
+}